@@ -21,9 +21,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.fluidity.search.Search;
 import io.fluidity.search.StorageInputStream;
 import io.fluidity.search.agg.events.StorageUtil;
-import io.fluidity.search.field.extractor.KvJsonPairExtractor;
+import io.fluidity.search.field.extractor.FieldExtractor;
+import io.fluidity.search.field.extractor.JsonFieldScanner;
 import io.fluidity.util.DateTimeExtractor;
-import io.fluidity.util.DateUtil;
+import io.fluidity.util.TimeInterpolator;
 import org.graalvm.collections.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,8 +41,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -56,6 +57,18 @@ import static io.fluidity.dataflow.Model.CORR_FILE_FMT;
  */
 public class DataflowExtractor implements AutoCloseable {
     public static final int DAYS_RETENTION = 365;
+    // json information about which stage of a trace or the name of the service being processed
+    private static final String[] DAT_TOKENS = {
+            // loginService.dostuff
+            "service.operation",
+            // REST, SQL, Lambda, Micro-thingy
+            "type",
+            // anthing else that is useful
+            "meta",
+            // tag information
+            "tag",
+            // normal/error/warn information
+            "behavior"};
     private final Logger log = LoggerFactory.getLogger(DataflowExtractor.class);
 
     private final StorageInputStream input;
@@ -79,18 +92,14 @@ public class DataflowExtractor implements AutoCloseable {
 
         final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor(timeFormat);
 
-        final LinkedList<Integer> lengths = new LinkedList<>();
+        final TimeInterpolator interpolator = new TimeInterpolator(isCompressed, fileFromTime, fileToTime, fileLength);
 
         final BufferedReader reader =
                 new BufferedReader(new InputStreamReader(new BufferedInputStream(input.inputStream),
                         StandardCharsets.UTF_8));
         Optional<String> nextLine = Optional.ofNullable(reader.readLine());
 
-        if (nextLine.isPresent()) {
-            lengths.add(nextLine.get().length());
-        }
-        long guessTimeInterval = DateUtil.guessTimeInterval(isCompressed, fileFromTime, fileToTime, fileLength, 0, lengths);
-        long currentTime = dateTimeExtractor.getTimeMaybe(fileFromTime, guessTimeInterval, nextLine.get());
+        long currentTime = fileFromTime;
 
         long scanFilePos = 0;
         File currentFile = null;
@@ -99,23 +108,32 @@ public class DataflowExtractor implements AutoCloseable {
         long startTime = 0;
         long lastCorrelationTime = 0;
 
-        final Map<String, KvJsonPairExtractor> extractorMap = getExtractorMap();
+        // when correlating on a json field it is pulled out in the same pass as the dat fields
+        final String correlationToken = new FieldExtractor(search.expression).getJsonToken();
+        final JsonFieldScanner scanner = getScanner(correlationToken);
         final Map<String, String> datData = new HashMap<>();
         final AtomicInteger ops = new AtomicInteger();
         try {
             while (nextLine.isPresent()) {
 
-                // recalibrate the time interval as more line lengths are known
                 final String lineContent = nextLine.get();
-                lengths.add(lineContent.length());
-                guessTimeInterval = DateUtil.guessTimeInterval(isCompressed, currentTime, fileToTime, fileLength, scanFilePos, lengths);
+                interpolator.addLine(lineContent.length());
+                final long linePos = scanFilePos;
                 scanFilePos += lineContent.length() + 2;
 
                 if (search.matches(lineContent) && lineContent.length() > 0) {
-                    currentTime = dateTimeExtractor.getTimeMaybe(currentTime, guessTimeInterval, lineContent);
+                    currentTime = dateTimeExtractor.getTime(lineContent);
+                    if (currentTime == DateTimeExtractor.NO_TIME) {
+                        currentTime = interpolator.estimate(linePos);
+                    } else {
+                        interpolator.anchor(currentTime, linePos);
+                    }
 
-                    final Optional<Pair<String, Long>> fieldNameAndValue = Optional.ofNullable(search
-                            .getFieldNameAndValue("file-name-source", lineContent));
+                    if (correlationToken != null) {
+                        scanner.scan(lineContent);
+                    }
+                    final Optional<Pair<String, Long>> fieldNameAndValue = Optional.ofNullable(correlationToken != null ?
+                            scanner.getKeyAndValue(DAT_TOKENS.length) : search.getFieldNameAndValue("file-name-source", lineContent));
 
                     if (fieldNameAndValue.isPresent()) {
                         final String correlationId = fieldNameAndValue.get().getLeft();
@@ -128,7 +146,10 @@ public class DataflowExtractor implements AutoCloseable {
                             startTime = currentTime;
                             ops.set(0);
                         }
-                        getDatData(ops, nextLine.get(), datData, extractorMap, currentTime);
+                        if (correlationToken == null) {
+                            scanner.scan(lineContent);
+                        }
+                        getDatData(ops, datData, scanner, currentTime);
                         if (bos.isPresent()) {
                             bos.get().write(lineContent.getBytes());
                             bos.get().write('\n');
@@ -181,50 +202,39 @@ public class DataflowExtractor implements AutoCloseable {
         return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
     }
 
-    private Map<String, KvJsonPairExtractor> getExtractorMap() {
-        // look for json information about which stage of a trace or the name of the service being processed
-        final HashMap<String, KvJsonPairExtractor> extractorMap = new HashMap<>();
-        // loginService.dostuff
-        addToMap(extractorMap, new KvJsonPairExtractor("service.operation"));
-        // REST, SQL, Lambda, Micro-thingy
-        addToMap(extractorMap, new KvJsonPairExtractor("type"));
-        // anthing else that is useful
-        addToMap(extractorMap, new KvJsonPairExtractor("meta"));
-        // tag information
-        addToMap(extractorMap, new KvJsonPairExtractor("tag"));
-        // normal/error/warn information
-        addToMap(extractorMap, new KvJsonPairExtractor("behavior"));
-        return extractorMap;
-    }
-
-    private void addToMap(final HashMap<String, KvJsonPairExtractor> extractorMap, final KvJsonPairExtractor extractor) {
-        extractorMap.put(extractor.getToken(), extractor);
+    private JsonFieldScanner getScanner(final String correlationToken) {
+        if (correlationToken == null) {
+            return new JsonFieldScanner(DAT_TOKENS);
+        }
+        final String[] tokens = Arrays.copyOf(DAT_TOKENS, DAT_TOKENS.length + 1);
+        tokens[DAT_TOKENS.length] = correlationToken;
+        return new JsonFieldScanner(tokens);
     }
 
-    private void getDatData(final AtomicInteger ops, final String nextLine, final Map<String, String> datData,
-                            final Map<String, KvJsonPairExtractor> extractorMap, final long timestamp) {
-        extractorMap.values().stream().forEach(extractor -> {
+    private void getDatData(final AtomicInteger ops, final Map<String, String> datData, final JsonFieldScanner scanner,
+                            final long timestamp) {
+        for (int i = 0; i < DAT_TOKENS.length; i++) {
+            final String token = scanner.token(i);
             try {
-                final Optional<Pair<String, Long>> extracted = Optional.ofNullable(extractor.getKeyAndValue("none", nextLine));
+                final Optional<Pair<String, Long>> extracted = Optional.ofNullable(scanner.getKeyAndValue(i));
                 if (extracted.isPresent()) {
-                    String currentValue = datData.get(extractor.getToken());
+                    String currentValue = datData.get(token);
                     if (currentValue == null) {
                         currentValue = "";
                     } else {
                         currentValue = currentValue + ", ";
                     }
-                    datData.put(extractor.getToken(),
-                            currentValue + extracted.get().getLeft() + ":" + timestamp);
-                    if (extractor.getToken().contains("operation")) {
+                    datData.put(token, currentValue + extracted.get().getLeft() + ":" + timestamp);
+                    if (token.contains("operation")) {
                         ops.incrementAndGet();
                     }
                 }
             } catch (Exception e) {
                 if (logWarningCount++ < 10) {
-                    log.warn("Extractor Failed:" + extractor.getToken(), e);
+                    log.warn("Extractor Failed:" + token, e);
                 }
             }
-        });
+        }
     }
 
     public void close() {
@@ -14,9 +14,9 @@
 
 package io.fluidity.search;
 
+import io.fluidity.search.agg.histo.LongTimeSeries;
 import io.fluidity.search.agg.histo.OverlayTimeSeries;
 import io.fluidity.search.agg.histo.Series;
-import io.fluidity.search.agg.histo.TimeSeries;
 import io.fluidity.search.field.FilenameMatcher;
 import io.fluidity.search.field.TagMatcher;
 import io.fluidity.search.field.extractor.FieldExtractor;
@@ -29,6 +29,8 @@ import org.jboss.resteasy.annotations.jaxrs.FormParam;
 import org.jboss.resteasy.annotations.providers.multipart.PartType;
 
 import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Expression-Parts: [bucket | host | tags] | filename | lineMatcher-IncludeFilter | fieldExtractor | analytic | timeControl | groupby
@@ -65,12 +67,27 @@ public class Search {
     transient PMatcher matcher;
 
     public boolean matches(String nextLine) {
+        return getMatcher().matches(nextLine);
+    }
+
+    public boolean matches(byte[] line, int offset, int length) {
+        return getMatcher().matches(line, offset, length);
+    }
+
+    /**
+     * See PMatcher.mayMatch - used to skip indexed blocks that cannot contain a match
+     */
+    public boolean mayMatch(Predicate<String> mayContain) {
+        return getMatcher().mayMatch(mayContain);
+    }
+
+    private PMatcher getMatcher() {
         if (matcher == null) {
             String[] split = expression.split("\\|");
             final String lineMatcherExpression = split.length > EXPRESSION_PARTS.record.ordinal() ? split[EXPRESSION_PARTS.record.ordinal()].trim() : "";
             matcher = RecordMatcherFactory.getMatcher(lineMatcherExpression);
         }
-        return matcher.matches(nextLine);
+        return matcher;
     }
 
     transient TagMatcher tagMatcher;
@@ -101,10 +118,25 @@ public class Search {
     private transient FieldExtractor fieldExtractor;
 
     public Pair<String, Long> getFieldNameAndValue(String sourceName, String nextLine) {
+        return fieldExtractor().getSeriesNameAndValue(sourceName, nextLine);
+    }
+
+    /**
+     * All the fields of the expression from one pass over the line - see FieldExtractor
+     */
+    public List<Pair<String, Long>> getFieldNamesAndValues(String sourceName, String nextLine) {
+        return fieldExtractor().getSeriesNamesAndValues(sourceName, nextLine);
+    }
+
+    public String getFieldName(int index) {
+        return fieldExtractor().getFieldName(index);
+    }
+
+    private FieldExtractor fieldExtractor() {
         if (fieldExtractor == null) {
             fieldExtractor = new FieldExtractor(expression);
         }
-        return fieldExtractor.getSeriesNameAndValue(sourceName, nextLine);
+        return fieldExtractor;
     }
     private transient GroupByExtractor groupByExtractor;
     public String applyGroupBy(String tags, String sourceName) {
@@ -121,7 +153,20 @@ public class Search {
 
         if (timeSeriesStyle.equals("time.overlay()"))
             return new OverlayTimeSeries<>(seriesName, groupBy, from, to, new Series.LongOps());
-        return new TimeSeries<>(seriesName, groupBy, from, to, new Series.LongOps());
+        return new LongTimeSeries(seriesName, groupBy, from, to);
+    }
+
+    /**
+     * The lazily created matchers/extractors are not thread-safe - use a copy per thread
+     */
+    public Search copy() {
+        Search copy = new Search();
+        copy.origin = origin;
+        copy.uid = uid;
+        copy.expression = expression;
+        copy.from = from;
+        copy.to = to;
+        return copy;
     }
 
     @Override
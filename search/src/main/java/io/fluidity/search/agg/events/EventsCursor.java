@@ -0,0 +1,56 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.events;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+
+/**
+ * Opaque token handed back with each page of events: the staged .events urls that still have data, in file index order,
+ * with the byte offset of the next unread line in each. Passing it back resumes the merge without re-reading anything.
+ */
+public class EventsCursor {
+
+    public static String encode(LinkedHashMap<String, Long> offsets) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(new ObjectMapper().writeValueAsBytes(offsets));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return url -> offset in file index order; empty when the events are exhausted
+     */
+    public static LinkedHashMap<String, Long> decode(String cursor) {
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.UTF_8));
+            return new ObjectMapper().readValue(json, new TypeReference<LinkedHashMap<String, Long>>() {
+            });
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RuntimeException("Invalid events cursor", e);
+        }
+    }
+
+    public static boolean isPresent(String cursor) {
+        return cursor != null && cursor.length() > 0;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.events;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Used in place of the staged .events file when results are streamed: each timestamp:filepos:data line written by an
+ * EventCollector is handed to the consumer as soon as it is complete. Once 'accepting' turns false (i.e. the event limit
+ * was reached) writes are dropped without being assembled into lines.
+ */
+public class ForwardingEventOutputStream extends OutputStream {
+    private final Consumer<String> consumer;
+    private final BooleanSupplier accepting;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    public ForwardingEventOutputStream(Consumer<String> consumer) {
+        this(consumer, () -> true);
+    }
+
+    public ForwardingEventOutputStream(Consumer<String> consumer, BooleanSupplier accepting) {
+        this.consumer = consumer;
+        this.accepting = accepting;
+    }
+
+    @Override
+    public void write(int b) {
+        if (!accepting.getAsBoolean()) return;
+        if (b == '\n') {
+            consumer.accept(new String(line.toByteArray(), StandardCharsets.UTF_8));
+            line.reset();
+        } else {
+            line.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (!accepting.getAsBoolean()) return;
+        int from = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                line.write(b, from, i - from);
+                write('\n');
+                from = i + 1;
+            }
+        }
+        line.write(b, from, end - from);
+    }
+}
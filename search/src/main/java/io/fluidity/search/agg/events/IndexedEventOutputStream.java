@@ -0,0 +1,102 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.events;
+
+import io.fluidity.util.TimeOffsetIndex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Wraps the staged .events output and builds a TimeOffsetIndex of it as timestamp:filepos:data lines pass through - an
+ * entry is taken at the first line after every 'interval' bytes. The index is handed over on close (when it has more than
+ * the first entry) so a page of events can be read from a point in time without scanning the file from byte 0.
+ */
+public class IndexedEventOutputStream extends OutputStream {
+    public static final long DEFAULT_INTERVAL = 256 * 1024;
+
+    private final OutputStream output;
+    private final long interval;
+    private final Consumer<TimeOffsetIndex> indexConsumer;
+    private final TimeOffsetIndex index = new TimeOffsetIndex();
+
+    private long position;
+    private long nextMark;
+    private boolean lineStart = true;
+    private boolean parsingTime;
+    private long lineOffset;
+    private long time;
+    private boolean closed;
+
+    public IndexedEventOutputStream(OutputStream output, long interval, Consumer<TimeOffsetIndex> indexConsumer) {
+        this.output = output;
+        this.interval = interval;
+        this.indexConsumer = indexConsumer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        output.write(b);
+        track((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        output.write(b, off, len);
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            track(b[i]);
+        }
+    }
+
+    private void track(byte b) {
+        if (lineStart) {
+            lineStart = false;
+            if (position >= nextMark) {
+                parsingTime = true;
+                lineOffset = position;
+                time = 0;
+            }
+        }
+        if (parsingTime) {
+            if (b >= '0' && b <= '9') {
+                time = time * 10 + (b - '0');
+            } else {
+                if (b == ':') {
+                    index.add(time, lineOffset);
+                    nextMark = lineOffset + interval;
+                }
+                parsingTime = false;
+            }
+        }
+        if (b == '\n') lineStart = true;
+        position++;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        output.close();
+        if (index.size() > 1) indexConsumer.accept(index);
+    }
+}
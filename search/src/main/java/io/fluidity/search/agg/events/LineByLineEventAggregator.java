@@ -18,15 +18,17 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.fluidity.search.Search;
 import io.fluidity.search.StorageInputStream;
-import org.graalvm.collections.Pair;
+import io.fluidity.util.LineScanner;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -36,24 +38,46 @@ import java.util.stream.Collectors;
  * Returns String[] of {
  * Histogram json,
  * Merged event data with prepended meta data, format: {FileIndex:UnixTime:Offset:LineData...}
+ * File index LUT json,
+ * Cursor to resume from (see EventsCursor)
  * }
  * Where FileIndex is the 'index' into the steams LinkedHashMap
  */
 public class LineByLineEventAggregator implements EventsAggregator {
-    private final Map<String, BufferedReader> streams;
+    private final Map<String, LineScanner> streams;
+    private final Map<String, Long> startOffsets;
     private final Map<String, Integer> fileLut;
     private final Search search;
     private boolean splitLine = false;
 
+    /**
+     * Holds the current line of each open stream - the head is the next event in time order
+     */
+    private final PriorityQueue<RecordEntry> nextLines;
+    /**
+     * Stream of the last returned line - it is only read again when the next line is asked for, so nothing is read past the limit
+     */
+    private String lastStream;
+
     public LineByLineEventAggregator(Map<String, StorageInputStream> streams, Search search) {
+        this(streams, Collections.emptyMap(), search);
+    }
+
+    /**
+     * @param startOffsets - where each stream has been positioned (i.e. resumed from a cursor), missing means 0
+     */
+    public LineByLineEventAggregator(Map<String, StorageInputStream> streams, Map<String, Long> startOffsets, Search search) {
         this.streams = streams.entrySet().stream()
                 .collect(Collectors.toMap(
                         entry -> entry.getKey()
-                        , entry -> new BufferedReader(new InputStreamReader(entry.getValue().inputStream))
+                        , entry -> new LineScanner(entry.getValue().inputStream, 8 * 1024)
                         )
                 );
+        this.startOffsets = startOffsets;
         this.fileLut = populateLut(streams.keySet());
         this.search = search;
+        this.nextLines = new PriorityQueue<>(Math.max(1, streams.size()),
+                Comparator.comparingLong(RecordEntry::getTime).thenComparing(entry -> fileLut.get(entry.getStreamName())));
         populateLineMap(this.streams);
     }
 
@@ -63,26 +87,22 @@ public class LineByLineEventAggregator implements EventsAggregator {
         return results;
     }
 
-    private void populateLineMap(Map<String, BufferedReader> streams) {
-        streams.entrySet().stream()
-                .forEach(entry -> {
-                    try {
-                        String nextLine = entry.getValue().readLine();
-                        if (nextLine != null) {
-                            nextLines.put(entry.getKey(), split(entry.getKey(), nextLine));
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+    private void populateLineMap(Map<String, LineScanner> streams) {
+        new ArrayList<>(streams.keySet()).forEach(streamName -> {
+            try {
+                advance(streamName);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
     }
 
-    private Pair<Long, RecordEntry> split(String streamName, String nextLine) {
+    private RecordEntry split(String streamName, String nextLine, long position) {
         int i = nextLine.indexOf(":");
         if (i == -1) return null;
-        Long time = Long.valueOf(nextLine.substring(0, i));
+        long time = Long.parseLong(nextLine.substring(0, i));
         String line = splitLine ? nextLine.substring(i + 1) : nextLine;
-        return Pair.create(time, new RecordEntry(streamName, time, line));
+        return new RecordEntry(streamName, time, line, position);
     }
 
     @Override
@@ -90,7 +110,8 @@ public class LineByLineEventAggregator implements EventsAggregator {
         StringBuilder results = new StringBuilder();
         RecordEntry nextRecord;
         int totalEvents = 0;
-        while ((nextRecord = getNextLine(streams)) != null && totalEvents < limit) {
+        // check the limit first so nothing is read once it is reached
+        while (totalEvents < limit && (nextRecord = getNextLine()) != null) {
             if (nextRecord.getTime() > fromTime) {
                 results.append(fileLut.get(nextRecord.getStreamName()));
                 results.append(":");
@@ -99,7 +120,21 @@ public class LineByLineEventAggregator implements EventsAggregator {
             }
         }
 
-        return new String[]{Integer.toString(totalEvents), results.toString(), getLutIndexAsStringArray()};
+        return new String[]{Integer.toString(totalEvents), results.toString(), getLutIndexAsStringArray(), EventsCursor.encode(cursor())};
+    }
+
+    /**
+     * @return the offset of the next unread line of each stream that still has data, in file index order
+     */
+    LinkedHashMap<String, Long> cursor() {
+        Map<String, Long> pending = new HashMap<>();
+        nextLines.forEach(entry -> pending.put(entry.getStreamName(), entry.getPosition()));
+        if (lastStream != null) {
+            pending.put(lastStream, startOffsets.getOrDefault(lastStream, 0L) + streams.get(lastStream).nextPosition());
+        }
+        LinkedHashMap<String, Long> cursor = new LinkedHashMap<>();
+        fileLut.keySet().stream().filter(pending::containsKey).forEach(streamName -> cursor.put(streamName, pending.get(streamName)));
+        return cursor;
     }
 
     private String getLutIndexAsStringArray() throws JsonProcessingException {
@@ -107,61 +142,45 @@ public class LineByLineEventAggregator implements EventsAggregator {
         return new ObjectMapper().writeValueAsString(keySet);
     }
 
-    Map<String, Pair<Long, RecordEntry>> nextLines = new HashMap<>();
-
     /**
      * Searched lines are stored using: timestamp:filepos:data
      *
-     * @param streams
-     * @return
+     * @return the earliest pending line - the stream it came from is advanced on the following call
      * @throws IOException
      */
-    private RecordEntry getNextLine(Map<String, BufferedReader> streams) throws IOException {
-        Map.Entry<String, Pair<Long, RecordEntry>> nextLine = findNextLine(nextLines);
-        if (nextLine == null) {
-            return null;
+    private RecordEntry getNextLine() throws IOException {
+        if (lastStream != null) {
+            advance(lastStream);
+            lastStream = null;
         }
-        if (nextLine.getValue() == null) {
-            String streamUrl = nextLine.getKey();
-            streams.remove(streamUrl).close();
-            nextLines.remove(streamUrl);
-            return getNextLine(streams);
-        }
-
-
-        // Note: 'nextLine' points to a hashmap entry that can be mutated by updates below.
-        RecordEntry result = nextLine.getValue().getRight();
-        String streamUrl = nextLine.getKey();
-        Pair<Long, RecordEntry> newStreamLineValue = readNewStreamLine(streamUrl, streams.get(streamUrl));
-        if (newStreamLineValue == null) {
-            streams.remove(streamUrl).close();
-            nextLines.remove(streamUrl);
-        } else {
-            nextLines.put(streamUrl, newStreamLineValue);
+        RecordEntry result = nextLines.poll();
+        if (result != null) {
+            lastStream = result.getStreamName();
         }
         return result;
     }
 
-    private Map.Entry<String, Pair<Long, RecordEntry>> findNextLine(Map<String, Pair<Long, RecordEntry>> nextLines) {
-        Map.Entry<String, Pair<Long, RecordEntry>> found = null;
-        List<Map.Entry<String, Pair<Long, RecordEntry>>> collect = nextLines.entrySet().stream().filter(entry -> found == null || entry.getValue().getLeft() < found.getValue().getLeft()).collect(Collectors.toList());
-        if (collect.size() == 0) return null;
-        else return collect.iterator().next();
-    }
-
-    private Pair<Long, RecordEntry> readNewStreamLine(String streamName, BufferedReader reader) throws IOException {
-        String line = reader.readLine();
-        if (line != null) {
-            return split(streamName, line);
+    /**
+     * Queues the next line of the stream, or closes it when exhausted. Lines without a timestamp are skipped.
+     */
+    private void advance(String streamName) throws IOException {
+        LineScanner scanner = streams.get(streamName);
+        long startOffset = startOffsets.getOrDefault(streamName, 0L);
+        while (scanner.next()) {
+            RecordEntry entry = split(streamName, scanner.lineAsString(), startOffset + scanner.position());
+            if (entry != null) {
+                nextLines.add(entry);
+                return;
+            }
         }
-        return null;
+        streams.remove(streamName).close();
     }
 
     @Override
     public void close() {
-        this.streams.values().forEach(reader -> {
+        this.streams.values().forEach(scanner -> {
             try {
-                reader.close();
+                scanner.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
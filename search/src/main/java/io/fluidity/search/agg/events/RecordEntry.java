@@ -4,11 +4,20 @@ public class RecordEntry {
     private String streamName;
     private final Long time;
     private final String line;
+    private final long position;
 
     public RecordEntry(String streamName, Long time, String line) {
+        this(streamName, time, line, -1);
+    }
+
+    /**
+     * @param position - byte offset of the line within its stream
+     */
+    public RecordEntry(String streamName, Long time, String line, long position) {
         this.streamName = streamName;
         this.time = time;
         this.line = line;
+        this.position = position;
     }
 
     public String getStreamName() {
@@ -22,4 +31,8 @@ public class RecordEntry {
     public String getLine() {
         return line;
     }
+
+    public long getPosition() {
+        return position;
+    }
 }
@@ -18,28 +18,34 @@ package io.fluidity.search.agg.events;
 
 import io.fluidity.search.Search;
 import io.fluidity.search.agg.histo.HistoCollector;
+import io.fluidity.util.ByteUtil;
 import io.fluidity.util.DateTimeExtractor;
-import io.fluidity.util.DateUtil;
+import io.fluidity.util.LineScanner;
+import io.fluidity.util.TimeInterpolator;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.util.LinkedList;
-import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 /**
  * Note: lines must be written in following format: timestamp:filepos:data to the filtered view - the .event file
  * <p>
+ * Lines are scanned and matched as bytes on a reused buffer (see {@link LineScanner}). Only lines that match are decoded
+ * into a String; their raw bytes are copied straight to the output.
  * <p>
  */
 public class SearchEventCollector implements EventCollector {
+    /**
+     * How often (in lines) the progress callback is called
+     */
+    public static final int PROGRESS_LINES = 4096;
+
     private final HistoCollector histoCollector;
     private InputStream input;
     private OutputStream output;
+    private BooleanSupplier progress = () -> true;
 
     public SearchEventCollector(final HistoCollector histoCollector, final InputStream input,
                                 final OutputStream output) {
@@ -48,6 +54,14 @@ public class SearchEventCollector implements EventCollector {
         this.output = output;
     }
 
+    /**
+     * Called from the scanning thread every PROGRESS_LINES lines - returning false stops the scan (i.e. the client went away)
+     */
+    public SearchEventCollector withProgress(BooleanSupplier progress) {
+        this.progress = progress;
+        return this;
+    }
+
     @Override
     public Integer[] process(final boolean isCompressed, final Search search, final long fileFromTime,
                              final long fileToTime, final long fileLength, final String timeFormat) throws IOException {
@@ -57,55 +71,53 @@ public class SearchEventCollector implements EventCollector {
 
         final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor(timeFormat);
         final BufferedOutputStream bos = new BufferedOutputStream(output);
-        final BufferedInputStream bis = new BufferedInputStream(input);
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(bis));
+        final LineScanner scanner = new LineScanner(input);
+        final byte[] numberScratch = new byte[20];
         long bytePosition = 0;
 
-        final LinkedList<Integer> lengths = new LinkedList<>();
+        final TimeInterpolator interpolator = new TimeInterpolator(isCompressed, fileFromTime, fileToTime, fileLength);
 
-        Optional<String> nextLine = Optional.ofNullable(reader.readLine());
-        if (nextLine.isPresent()) {
-            lengths.add(nextLine.get().length());
-        }
-        long guessTimeInterval = DateUtil.guessTimeInterval(isCompressed, fileFromTime, fileToTime, fileLength, 0, lengths);
-        long scanFilePos = 0;
-
-        long currentTime = dateTimeExtractor.getTimeMaybe(fileFromTime, guessTimeInterval, nextLine.get());
         try {
 
-            while (nextLine.isPresent()) {
-
-                if (currentTime > search.from && currentTime < search.to && search.matches(nextLine.get())) {
-                    byte[] bytes = new StringBuilder().append(currentTime).append(':').append(bytePosition).append(':')
-                            .append(nextLine.get()).append('\n').toString().getBytes();
-                    bos.write(bytes);
-                    histoCollector.add(currentTime, bytePosition, nextLine.get());
-                    readEvents++;
-                    readEvents++;// NL
-
-                    // tracks the dest file offset - so it can be seek-to-offset for user actions (histogram click, or raw events click)
-                    bytePosition += bytes.length;
-                }
-
-                // keep calibrating fake time calc based on location
-                nextLine = Optional.ofNullable(reader.readLine());
-
-
-                // recalibrate the time interval as more line lengths are known
-                if (nextLine.isPresent()) {
-                    String line = nextLine.get();
-                    int length = nextLine.get().length();
-                    lengths.add(length);
-                    guessTimeInterval = DateUtil.guessTimeInterval(isCompressed, currentTime, fileToTime, fileLength, scanFilePos, lengths);
-                    scanFilePos += length + 2;
-
-                    currentTime = dateTimeExtractor.getTimeMaybe(currentTime, guessTimeInterval, line);
+            while (scanner.next()) {
+                final byte[] buffer = scanner.buffer();
+                final int lineStart = scanner.lineStart();
+                final int lineLength = scanner.lineLength();
+
+                interpolator.addLine(lineLength);
+
+                if (search.matches(buffer, lineStart, lineLength)) {
+                    final String line = scanner.lineAsString();
+                    long currentTime = dateTimeExtractor.getTime(line);
+                    if (currentTime == DateTimeExtractor.NO_TIME) {
+                        currentTime = interpolator.estimate(scanner.position());
+                    } else {
+                        interpolator.anchor(currentTime, scanner.position());
+                    }
+
+                    if (currentTime > search.from && currentTime < search.to) {
+                        int written = ByteUtil.writeLong(bos, currentTime, numberScratch);
+                        bos.write(':');
+                        written += ByteUtil.writeLong(bos, bytePosition, numberScratch);
+                        bos.write(':');
+                        bos.write(buffer, lineStart, lineLength);
+                        bos.write('\n');
+                        written += lineLength + 3;
+
+                        histoCollector.add(currentTime, bytePosition, line);
+                        readEvents++;
+                        readEvents++;// NL
+
+                        // tracks the dest file offset - so it can be seek-to-offset for user actions (histogram click, or raw events click)
+                        bytePosition += written;
+                    }
                 }
                 totalEvents++;
+                if (totalEvents % PROGRESS_LINES == 0 && !progress.getAsBoolean()) break;
             }
             bos.flush();
         } finally {
-            reader.close();
+            scanner.close();
             bos.close();
         }
         return new Integer[]{readEvents, totalEvents};
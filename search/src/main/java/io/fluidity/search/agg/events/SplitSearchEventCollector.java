@@ -0,0 +1,295 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.search.agg.events;
+
+import io.fluidity.search.Search;
+import io.fluidity.search.agg.histo.HistoCollector;
+import io.fluidity.util.ByteUtil;
+import io.fluidity.util.DateTimeExtractor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scans a large uncompressed file as N line-aligned byte ranges in parallel. Each range runs its own SearchEventCollector
+ * (with a forked HistoCollector and copied Search) into a temp file; the ranges are then stitched back in file order so the
+ * .events output is identical to a single-threaded scan - filepos values are rewritten to the final destination offsets.
+ * <p>
+ * Alternatively scans a given set of (line aligned) byte ranges - i.e. the blocks an index says may contain a match.
+ */
+public class SplitSearchEventCollector implements EventCollector {
+
+    /**
+     * Opens the underlying (uncompressed) data positioned at the given offset
+     */
+    public interface SeekableSource {
+        InputStream open(long offset) throws IOException;
+    }
+
+    private final HistoCollector histoCollector;
+    private final SeekableSource source;
+    private final OutputStream output;
+    private final ExecutorService executor;
+    private final int splits;
+    private final long[][] ranges;
+
+    public SplitSearchEventCollector(final HistoCollector histoCollector, final SeekableSource source, final OutputStream output,
+                                     final ExecutorService executor, final int splits) {
+        this.histoCollector = histoCollector;
+        this.source = source;
+        this.output = output;
+        this.executor = executor;
+        this.splits = splits;
+        this.ranges = null;
+    }
+
+    /**
+     * @param ranges - [from, to) byte offsets, in file order - optionally followed by the range's min and max time
+     */
+    public SplitSearchEventCollector(final HistoCollector histoCollector, final SeekableSource source, final OutputStream output,
+                                     final ExecutorService executor, final long[][] ranges) {
+        this.histoCollector = histoCollector;
+        this.source = source;
+        this.output = output;
+        this.executor = executor;
+        this.splits = ranges.length;
+        this.ranges = ranges;
+    }
+
+    @Override
+    public Integer[] process(final boolean isCompressed, final Search search, final long fileFromTime, final long fileToTime,
+                             final long fileLength, final String timeFormat) throws IOException {
+
+        final long[][] scanRanges = ranges != null ? ranges : toRanges(split(fileLength));
+        final List<File> stagedFiles = new ArrayList<>();
+        final AtomicBoolean abandoned = new AtomicBoolean();
+        final List<Future<Range>> futures = new ArrayList<>();
+
+        int readEvents = 0;
+        int totalEvents = 0;
+        try {
+            for (long[] range : scanRanges) {
+                final File staged = File.createTempFile("fluidity-split-", ".events");
+                stagedFiles.add(staged);
+                futures.add(executor.submit(() -> scanRange(search, fileFromTime, fileToTime, fileLength, timeFormat, range, staged, abandoned)));
+            }
+            final List<Range> scanned = new ArrayList<>();
+            for (Future<Range> future : futures) {
+                scanned.add(future.get());
+            }
+            try (BufferedOutputStream bos = new BufferedOutputStream(output)) {
+                final byte[] buffer = new byte[64 * 1024];
+                final byte[] numberScratch = new byte[20];
+                long bytePosition = 0;
+                for (Range range : scanned) {
+                    histoCollector.merge(range.histoCollector);
+                    bytePosition = copyAndRebase(range.staged, bos, bytePosition, buffer, numberScratch);
+                    readEvents += range.counts[0];
+                    totalEvents += range.counts[1];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Split scan failed", e.getCause());
+        } finally {
+            // a range that is still running deletes its own file when it sees 'abandoned'
+            abandoned.set(true);
+            for (Future<Range> future : futures) {
+                if (!future.isDone()) future.cancel(true);
+            }
+            stagedFiles.forEach(File::delete);
+        }
+        return new Integer[]{readEvents, totalEvents};
+    }
+
+    private Range scanRange(final Search search, final long fileFromTime, final long fileToTime, final long fileLength,
+                            final String timeFormat, final long[] range, final File staged, final AtomicBoolean abandoned) throws IOException {
+        final long from = range[0];
+        final long to = range[1];
+        final long rangeFromTime;
+        final long rangeToTime;
+        if (range.length == 4 && range[2] != DateTimeExtractor.NO_TIME) {
+            rangeFromTime = range[2];
+            rangeToTime = range[3];
+        } else {
+            // approximate the time window of the range by its position in the file
+            rangeFromTime = fileFromTime + (long) ((fileToTime - fileFromTime) * ((double) from / fileLength));
+            rangeToTime = fileFromTime + (long) ((fileToTime - fileFromTime) * ((double) to / fileLength));
+        }
+
+        final HistoCollector forked = histoCollector.fork();
+        try (InputStream input = new RangeInputStream(source.open(from), to - from);
+             SearchEventCollector collector = new SearchEventCollector(forked, input, new FileOutputStream(staged))) {
+            final Integer[] counts = collector.process(false, search.copy(), rangeFromTime, rangeToTime, to - from, timeFormat);
+            return new Range(forked, staged, counts);
+        } catch (Exception e) {
+            if (e instanceof IOException) throw (IOException) e;
+            throw new IOException(e);
+        } finally {
+            if (abandoned.get()) staged.delete();
+        }
+    }
+
+    private static long[][] toRanges(final long[] boundaries) {
+        final long[][] ranges = new long[boundaries.length - 1][];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new long[]{boundaries[i], boundaries[i + 1]};
+        }
+        return ranges;
+    }
+
+    /**
+     * Nominal equal sized ranges, each boundary moved forward to just past the next newline so no line is split
+     */
+    long[] split(final long fileLength) throws IOException {
+        final List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        final long nominal = fileLength / splits;
+        for (int i = 1; i < splits; i++) {
+            final long aligned = alignToLine(i * nominal, fileLength);
+            if (aligned > boundaries.get(boundaries.size() - 1) && aligned < fileLength) boundaries.add(aligned);
+        }
+        boundaries.add(fileLength);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private long alignToLine(final long offset, final long fileLength) throws IOException {
+        final byte[] buffer = new byte[8 * 1024];
+        long position = offset;
+        try (InputStream input = source.open(offset)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                final int newline = ByteUtil.indexOf(buffer, 0, read, (byte) '\n');
+                if (newline != -1) return position + newline + 1;
+                position += read;
+            }
+        }
+        return fileLength;
+    }
+
+    /**
+     * Copies timestamp:filepos:data lines and replaces filepos with the offset in the final output
+     */
+    private long copyAndRebase(final File staged, final OutputStream out, long bytePosition, final byte[] buffer, final byte[] numberScratch) throws IOException {
+        try (InputStream in = new FileInputStream(staged)) {
+            int field = 0;
+            long written = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int position = 0;
+                while (position < read) {
+                    if (field == 1) {
+                        // skip the staged position
+                        final int colon = ByteUtil.indexOf(buffer, position, read - position, (byte) ':');
+                        if (colon == -1) break;
+                        written += ByteUtil.writeLong(out, bytePosition, numberScratch);
+                        position = colon;
+                        field = 2;
+                        continue;
+                    }
+                    // copy up to and including the ':' after the timestamp, or the end of the line
+                    int end = position;
+                    while (end < read && buffer[end] != '\n' && (field == 2 || buffer[end] != ':')) end++;
+                    if (end == read) {
+                        out.write(buffer, position, end - position);
+                        written += end - position;
+                        break;
+                    }
+                    out.write(buffer, position, end + 1 - position);
+                    written += end + 1 - position;
+                    if (buffer[end] == '\n') {
+                        bytePosition += written;
+                        written = 0;
+                        field = 0;
+                    } else {
+                        field = 1;
+                    }
+                    position = end + 1;
+                }
+            }
+        }
+        return bytePosition;
+    }
+
+    @Override
+    public void close() throws Exception {
+    }
+
+    private static class Range {
+        private final HistoCollector histoCollector;
+        private final File staged;
+        private final Integer[] counts;
+
+        private Range(HistoCollector histoCollector, File staged, Integer[] counts) {
+            this.histoCollector = histoCollector;
+            this.staged = staged;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * Stops reading after length bytes
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        private RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b != -1) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read != -1) remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
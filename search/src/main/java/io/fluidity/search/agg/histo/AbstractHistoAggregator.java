@@ -14,7 +14,6 @@
 
 package io.fluidity.search.agg.histo;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -26,15 +25,26 @@ import org.graalvm.collections.Pair;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 abstract class AbstractHistoAggregator<T> implements HistoAggregator<T> {
+    public static final String REDUCE_THREADS = "fluidity.histo.reduce.threads";
+
+    /**
+     * Partials are read (blocking on storage) while they are reduced - kept off the common pool
+     */
+    private static final ForkJoinPool reducePool = new ForkJoinPool(Integer.getInteger(REDUCE_THREADS, Runtime.getRuntime().availableProcessors()));
+
     protected final Map<String, StorageInputStream> inputStreams;
     protected final Search search;
+    private volatile boolean seriesCapped;
 
     public AbstractHistoAggregator(Map<String, StorageInputStream> inputStreams, Search search) {
         this.inputStreams = inputStreams;
@@ -43,57 +53,94 @@ abstract class AbstractHistoAggregator<T> implements HistoAggregator<T> {
 
     @Override
     public String process() throws Exception {
-        List<String> collectedJson = inputStreams.entrySet().stream().map(entry -> readJson(entry.getValue().inputStream)).collect(Collectors.toList());
-
-        // TODO: implement reduce functionality between each of the series, i.e. avg/stats/min/max etc
         ObjectMapper objectMapper = new ObjectMapper();
         SimpleModule module = new SimpleModule();
         module.addDeserializer(Pair.class, new PairLongLongDeserializer());
         objectMapper.registerModule(module);
-        List<List> collectedSeriesList =
-                collectedJson.stream().map(json -> {
-                    try {
-                        return objectMapper.readValue(json, new TypeReference<List<TimeSeries>>() {
-                        });
-                    } catch (JsonProcessingException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                }).collect(Collectors.toList());
-
-        List<Series> collectedSeriesWithPossibleDuplicateNames = (List<Series>) collectedSeriesList.stream().flatMap(list -> list.stream()).collect(Collectors.toList());
-
-        HashMap<String, Series<T>> reducedSeries = new HashMap<>();
-        collectedSeriesWithPossibleDuplicateNames.forEach(series ->
-        {
-            if (reducedSeries.containsKey(series.name())) {
-                reducedSeries.get(series.name()).merge(series);
-            } else {
-                reducedSeries.put(series.name(), series);
-            }
-        }
-        );
+
+        // TODO: implement reduce functionality between each of the series, i.e. avg/stats/min/max etc
+        List<StorageInputStream> partials = new ArrayList<>(inputStreams.values());
+        Map<String, Series<T>> reducedSeries = reducePool.invoke(new ReduceTask(partials, 0, partials.size(), objectMapper));
 
         return objectMapper.writeValueAsString(ClientFormatter.getHistoSeriesForClient(processSeries(reducedSeries.values())));
     }
 
+    @Override
+    public String process(Collection<Series<T>> reducedSeries) throws Exception {
+        return new ObjectMapper().writeValueAsString(ClientFormatter.getHistoSeriesForClient(processSeries(reducedSeries)));
+    }
+
     abstract List<Series<Long>> processSeries(Collection<Series<T>> collectedSeries);
 
-    private String readJson(InputStream inputStream) {
-        try {
-            return new String(IOUtils.toByteArray(inputStream));
+    /**
+     * Decodes partials in parallel and merges the resulting maps pairwise - the smaller map is merged into the larger one
+     */
+    private class ReduceTask extends RecursiveTask<Map<String, Series<T>>> {
+        private final List<StorageInputStream> partials;
+        private final int from;
+        private final int to;
+        private final ObjectMapper objectMapper;
+
+        private ReduceTask(List<StorageInputStream> partials, int from, int to, ObjectMapper objectMapper) {
+            this.partials = partials;
+            this.from = from;
+            this.to = to;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        protected Map<String, Series<T>> compute() {
+            if (to - from <= 1) {
+                Map<String, Series<T>> reduced = new HashMap<>();
+                if (from < to) {
+                    merge(reduced, readSeries(partials.get(from).inputStream, objectMapper));
+                }
+                return reduced;
+            }
+            int middle = (from + to) >>> 1;
+            ReduceTask left = new ReduceTask(partials, from, middle, objectMapper);
+            left.fork();
+            Map<String, Series<T>> right = new ReduceTask(partials, middle, to, objectMapper).compute();
+            Map<String, Series<T>> joined = left.join();
+            if (joined.size() < right.size()) {
+                merge(right, joined.values());
+                return right;
+            }
+            merge(joined, right.values());
+            return joined;
+        }
+
+        private void merge(Map<String, Series<T>> target, Collection<Series<T>> seriesList) {
+            seriesList.forEach(series -> {
+                Series<T> existing = target.putIfAbsent(series.name(), series);
+                if (existing != null) existing.merge(series);
+            });
+        }
+    }
+
+    /**
+     * Partials are binary (HistoBinaryFormat) - json is still accepted for those staged by older versions
+     */
+    private List<Series<T>> readSeries(InputStream inputStream, ObjectMapper objectMapper) {
+        try (InputStream markable = HistoBinaryFormat.markable(inputStream)) {
+            if (HistoBinaryFormat.isBinary(markable)) {
+                HistoBinaryFormat.Partial partial = HistoBinaryFormat.readPartial(markable);
+                if (partial.seriesCapped) seriesCapped = true;
+                return (List) partial.series;
+            }
+            return (List) objectMapper.readValue(IOUtils.toByteArray(markable), new TypeReference<List<TimeSeries>>() {
+            });
         } catch (IOException e) {
             e.printStackTrace();
-            return "";
-        } finally {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            return Collections.emptyList();
         }
     }
 
+    @Override
+    public boolean seriesCapped() {
+        return seriesCapped;
+    }
+
     @Override
     public void close() {
         this.inputStreams.values().forEach(stream -> {
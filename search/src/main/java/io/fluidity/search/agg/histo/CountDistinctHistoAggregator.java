@@ -14,21 +14,19 @@
 
 package io.fluidity.search.agg.histo;
 
-import com.clearspring.analytics.stream.membership.BloomFilter;
-import com.clearspring.analytics.stream.membership.Filter;
 import io.fluidity.search.Search;
 import io.fluidity.search.StorageInputStream;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Massive shortcomings - will only calculate cardinality against a single source
- * Fix:
- * 1. Series.data[2] value needs to be an Object instead of a long value.
- * 2. Change to use HyperLogLog
+ * Each series holds a HyperLogLog sketch per time bucket (see DistinctTimeSeries) that is written into the histo partial.
+ * Here the sketches of every series (and so every file) are unioned per groupBy before counting - so values seen in more
+ * than one file are only counted once. Series a collector could not hold are unioned into the (other) group.
  */
 public class CountDistinctHistoAggregator extends AbstractHistoAggregator<Long> {
 
@@ -41,11 +39,20 @@ public class CountDistinctHistoAggregator extends AbstractHistoAggregator<Long>
     }
 
     List<Series<Long>> processSeries(Collection<Series<Long>> collectedSeries) {
-        Series<Long> count = search.getTimeSeries("distinct", "", search.from, search.to);
-        collectedSeries.stream().forEach(series -> series.data().stream().forEach(point -> {
-            count.update(point.getLeft(), add(count.get(point.getLeft()), point.getRight()));
-        }));
-        return Arrays.asList(count);
+        Map<String, DistinctTimeSeries> unions = new LinkedHashMap<>();
+        collectedSeries.forEach(series -> {
+            String groupBy = series.groupBy() == null || series.groupBy().length() == 0 ? "distinct" : series.groupBy();
+            unions.computeIfAbsent(groupBy, k -> new DistinctTimeSeries(k, "", search.from, search.to)).merge(series);
+        });
+        List<Series<Long>> results = new ArrayList<>();
+        unions.forEach((groupBy, union) -> {
+            Series<Long> count = new LongTimeSeries(groupBy, "", search.from, search.to);
+            union.data().forEach(point -> {
+                if (point.getRight() != null) count.update(point.getLeft(), point.getRight());
+            });
+            results.add(count);
+        });
+        return results;
     }
 
     @Override
@@ -55,21 +62,17 @@ public class CountDistinctHistoAggregator extends AbstractHistoAggregator<Long>
 
     @Override
     public HistoFunction<Long, Long> function() {
-        Filter filter = new BloomFilter(100, 0.01);
-        return (currentValue, newValue, nextLine, bytePosition, time, histoIndex, expression) -> {
-            boolean present = filter.isPresent(newValue.toString());
-            filter.add(newValue.toString());
-            if (!present) {
-                return currentValue != null ? currentValue + 2 : +1;
-            } else {
-                return currentValue;
+        return new HistoFunction<Long, Long>() {
+            @Override
+            public Long calculate(Long currentValue, Long newValue, String nextLine, long bytePosition, long time, int histoIndex, String expression) {
+                // offered to the bucket's sketch by DistinctTimeSeries.update
+                return newValue;
             }
-        };
-    }
 
-    protected long add(Long currentValue, Long newValue) {
-        currentValue = currentValue == null ? 0 : currentValue;
-        newValue = newValue == null ? 0 : newValue;
-        return currentValue.longValue() + newValue.longValue();
+            @Override
+            public Series<Long> newSeries(Search search, String seriesName, String groupBy, long from, long to) {
+                return new DistinctTimeSeries(seriesName, groupBy, from, to);
+            }
+        };
     }
 }
@@ -32,6 +32,8 @@ public class CountEachHistoAggregator extends AbstractHistoAggregator<Long> {
     }
 
     public static final int LIMIT = 25;
+    // candidates kept by each scan - Space-Saving finds every value above 1/CANDIDATES of the lines
+    public static final int CANDIDATES = LIMIT * 4;
 
     public CountEachHistoAggregator(Map<String, StorageInputStream> inputStreams, Search search) {
         super(inputStreams, search);
@@ -64,7 +66,7 @@ public class CountEachHistoAggregator extends AbstractHistoAggregator<Long> {
     private Set<String> getTopSeriesNames(Collection<Series<Long>> collectedSeries, int limit) {
         // count the total hits for the series
         Map<String, Long> countMap = new HashMap<>();
-        collectedSeries.stream().forEach(series -> series.data().stream().forEach(data -> {
+        collectedSeries.stream().filter(series -> !SimpleHistoCollector.isOther(series)).forEach(series -> series.data().stream().forEach(data -> {
             Long aLong = countMap.get(series.name());
             if (aLong == null || aLong == -1) aLong = 0L;
             countMap.put(series.name(), add(aLong, data.getRight()));
@@ -89,7 +91,17 @@ public class CountEachHistoAggregator extends AbstractHistoAggregator<Long> {
 
     @Override
     public HistoFunction<Long, Long> function() {
-        return (currentValue, newValue, nextLine, bytePosition, time, histoIndex, expression) -> currentValue == null ? 1 : currentValue.longValue() + 1;
+        return new HistoFunction<Long, Long>() {
+            @Override
+            public Long calculate(Long currentValue, Long newValue, String nextLine, long bytePosition, long time, int histoIndex, String expression) {
+                return currentValue == null ? 1 : currentValue.longValue() + 1;
+            }
+
+            @Override
+            public int seriesLimit() {
+                return CANDIDATES;
+            }
+        };
     }
 
     protected long add(Long currentValue, Long newValue) {
@@ -0,0 +1,200 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
+import com.clearspring.analytics.stream.cardinality.HyperLogLogPlus;
+import io.fluidity.util.DateUtil;
+import org.graalvm.collections.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds a HyperLogLog sketch per time bucket rather than a count - update() offers 'name:value' to the bucket's sketch and
+ * get() is the estimated number of distinct values. Merging unions the sketches, so a value seen in many files (or
+ * series) is only counted once. Sketches start sparse and are capped in size, so memory stays bounded at high cardinality.
+ */
+public class DistinctTimeSeries implements Series<Long> {
+    static final int PRECISION = 12;
+    static final int SPARSE_PRECISION = 20;
+
+    private String name;
+    private String groupBy;
+    private long start;
+    private long delta;
+    private HyperLogLogPlus[] sketches;
+    // estimates are cached until the sketch changes (-1)
+    private long[] cardinalities;
+
+    public DistinctTimeSeries(String name, String groupBy, long from, long to) {
+        this(name, groupBy, DateUtil.floorMin(from), TimeSeries.bucketDelta(DateUtil.floorMin(to) - DateUtil.floorMin(from)), LongTimeSeries.buckets(from, to));
+    }
+
+    public DistinctTimeSeries(String name, String groupBy, long start, long delta, int buckets) {
+        this.name = name;
+        this.groupBy = groupBy;
+        this.start = start;
+        this.delta = delta;
+        this.sketches = new HyperLogLogPlus[buckets];
+        this.cardinalities = new long[buckets];
+    }
+
+    @Override
+    public String groupBy() {
+        return groupBy;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int index(long time) {
+        return (int) ((time - start) / delta);
+    }
+
+    public int size() {
+        return sketches.length;
+    }
+
+    public long getDelta() {
+        return delta;
+    }
+
+    /**
+     * @return null when nothing was seen in the bucket
+     */
+    public HyperLogLogPlus sketch(int index) {
+        return sketches[index];
+    }
+
+    public void setSketch(int index, HyperLogLogPlus sketch) {
+        sketches[index] = sketch;
+        cardinalities[index] = -1;
+    }
+
+    @Override
+    public Long get(long time) {
+        int index = index(time);
+        if (index < 0 || index >= sketches.length || sketches[index] == null) return null;
+        if (cardinalities[index] < 0) cardinalities[index] = sketches[index].cardinality();
+        return cardinalities[index];
+    }
+
+    @Override
+    public void update(long time, Long value) {
+        int index = index(time);
+        if (value == null || index < 0 || index >= sketches.length) return;
+        if (sketches[index] == null) sketches[index] = new HyperLogLogPlus(PRECISION, SPARSE_PRECISION);
+        if (sketches[index].offer(name + ":" + value)) cardinalities[index] = -1;
+    }
+
+    @Override
+    public boolean hasData() {
+        for (HyperLogLogPlus sketch : sketches) {
+            if (sketch != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Only other DistinctTimeSeries can be merged - counts cannot be turned back into values
+     */
+    @Override
+    public void merge(Series<Long> series) {
+        if (!(series instanceof DistinctTimeSeries)) return;
+        DistinctTimeSeries other = (DistinctTimeSeries) series;
+        for (int i = 0; i < other.sketches.length; i++) {
+            if (other.sketches[i] == null) continue;
+            int index = index(other.start + i * other.delta);
+            if (index < 0 || index >= sketches.length) continue;
+            if (sketches[index] == null) {
+                sketches[index] = other.sketches[i];
+            } else {
+                try {
+                    sketches[index].addAll(other.sketches[i]);
+                } catch (CardinalityMergeException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            cardinalities[index] = -1;
+        }
+    }
+
+    @Override
+    public List<Pair<Long, Long>> data() {
+        List<Pair<Long, Long>> data = new ArrayList<>(sketches.length);
+        for (int i = 0; i < sketches.length; i++) {
+            long time = start + i * delta;
+            data.add(Pair.create(time, get(time)));
+        }
+        return data;
+    }
+
+    @Override
+    public Collection<Series<Long>> slice(long timeBucket) {
+        Map<Long, Series<Long>> results = new LinkedHashMap<>();
+        for (int i = 0; i < sketches.length; i++) {
+            long time = start + i * delta;
+            long seriesStartTime = DateUtil.floorHour(time);
+            DistinctTimeSeries sliced = (DistinctTimeSeries) results.computeIfAbsent(seriesStartTime, k -> new DistinctTimeSeries(name, groupBy, seriesStartTime, seriesStartTime + timeBucket));
+            int index = sliced.index(time);
+            if (sketches[i] != null && index >= 0 && index < sliced.size()) sliced.setSketch(index, sketches[i]);
+        }
+        return results.values();
+    }
+
+    @Override
+    public long start() {
+        return start;
+    }
+
+    @Override
+    public long end() {
+        return start + (sketches.length - 1) * delta;
+    }
+
+    /**
+     * Getters to keep the same json (bean) layout as TimeSeries
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getGroupBy() {
+        return groupBy;
+    }
+
+    public List<Pair<Long, Long>> getData() {
+        return data();
+    }
+
+    @Override
+    public String toString() {
+        return "DistinctTimeSeries{" +
+                "groupBy='" + groupBy + '\'' +
+                " start=" + DateUtil.printTime(start) +
+                " end=" + DateUtil.printTime(end()) +
+                ", name='" + name + '\'' +
+                ", delta=" + delta +
+                '}';
+    }
+}
@@ -30,7 +30,8 @@ public class HistoAggFactory {
             new CountHistoAggregator(null, null),
             new CountEachHistoAggregator(null, null),
             new CountDistinctHistoAggregator(null, null),
-            new StatsHistoAggregator(null, null));
+            new StatsHistoAggregator(null, null),
+            new PercentilesHistoAggregator(null, null));
 
     public HistoAggregator get(Map<String, StorageInputStream> inputStreams, Search search) {
         String analytic = search.analyticValue();
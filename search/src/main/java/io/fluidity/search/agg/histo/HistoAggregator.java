@@ -17,6 +17,7 @@ package io.fluidity.search.agg.histo;
 import io.fluidity.search.Search;
 import io.fluidity.search.StorageInputStream;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -49,9 +50,21 @@ import java.util.Map;
 public interface HistoAggregator<T> extends AutoCloseable {
     String process() throws Exception;
 
+    /**
+     * @return the client json for series that are already reduced - i.e. the running total of a streamed search
+     */
+    String process(Collection<Series<T>> reducedSeries) throws Exception;
+
     boolean isForMe(String analytic);
 
     HistoAggregator<T> clone(Map<String, StorageInputStream> inputStreams, Search search);
 
     HistoFunction function();
+
+    /**
+     * @return true (once processed) when any partial hit the series budget - see SimpleHistoCollector.MAX_SERIES
+     */
+    default boolean seriesCapped() {
+        return false;
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import com.clearspring.analytics.stream.cardinality.HyperLogLogPlus;
+import org.graalvm.collections.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Binary staging format for histogram partials (.histo) - replaces the pretty json of List&lt;TimeSeries&gt;.
+ * <pre>
+ * magic 'FHST', byte version, byte flags (v3+, bit 0 - series capped), varint seriesCount, per series:
+ *   byte type (v2+), utf name, utf groupBy, long start, long delta, varint buckets, presence bitmap (long per 64 buckets)
+ *   COUNTS: zigzag-varint delta of each present value from the previous present value
+ *   DISTINCT: varint length + HyperLogLog bytes for each present bucket
+ * </pre>
+ * isBinary() lets readers fall back to json for partials staged by older versions.
+ */
+public class HistoBinaryFormat {
+    private static final byte[] MAGIC = {'F', 'H', 'S', 'T'};
+    private static final int VERSION = 3;
+    private static final int COUNTS = 0;
+    private static final int DISTINCT = 1;
+    private static final int FLAG_CAPPED = 1;
+
+    /**
+     * A decoded partial - seriesCapped means the collector hit its series budget and folded the rest into an overflow series
+     */
+    public static class Partial {
+        public final List<Series<Long>> series;
+        public final boolean seriesCapped;
+
+        Partial(List<Series<Long>> series, boolean seriesCapped) {
+            this.series = series;
+            this.seriesCapped = seriesCapped;
+        }
+    }
+
+    public static void write(Collection<Series<Long>> seriesList, OutputStream outputStream) throws IOException {
+        write(seriesList, false, outputStream);
+    }
+
+    public static void write(Collection<Series<Long>> seriesList, boolean seriesCapped, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(seriesCapped ? FLAG_CAPPED : 0);
+        writeVarLong(out, seriesList.size());
+        for (Series<Long> series : seriesList) {
+            if (series instanceof DistinctTimeSeries) {
+                writeDistinct((DistinctTimeSeries) series, out);
+            } else {
+                writeCounts(series instanceof LongTimeSeries ? (LongTimeSeries) series : toLongSeries(series), out);
+            }
+        }
+        out.flush();
+    }
+
+    private static void writeCounts(LongTimeSeries longSeries, DataOutputStream out) throws IOException {
+        out.writeByte(COUNTS);
+        int buckets = longSeries.size();
+        writeHeader(longSeries, longSeries.getDelta(), buckets, longSeries::has, out);
+        long previous = 0;
+        for (int i = 0; i < buckets; i++) {
+            if (longSeries.has(i)) {
+                long value = longSeries.getLong(i);
+                writeVarLong(out, zigZag(value - previous));
+                previous = value;
+            }
+        }
+    }
+
+    private static void writeDistinct(DistinctTimeSeries distinctSeries, DataOutputStream out) throws IOException {
+        out.writeByte(DISTINCT);
+        int buckets = distinctSeries.size();
+        writeHeader(distinctSeries, distinctSeries.getDelta(), buckets, i -> distinctSeries.sketch(i) != null, out);
+        for (int i = 0; i < buckets; i++) {
+            if (distinctSeries.sketch(i) != null) {
+                byte[] bytes = distinctSeries.sketch(i).getBytes();
+                writeVarLong(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void writeHeader(Series<Long> series, long delta, int buckets, IntPredicate present, DataOutputStream out) throws IOException {
+        out.writeUTF(series.name() == null ? "" : series.name());
+        out.writeUTF(series.groupBy() == null ? "" : series.groupBy());
+        out.writeLong(series.start());
+        out.writeLong(delta);
+        writeVarLong(out, buckets);
+        for (int word = 0; word < (buckets + 63) >>> 6; word++) {
+            long bits = 0;
+            for (int i = word << 6; i < Math.min(buckets, (word + 1) << 6); i++) {
+                if (present.test(i)) bits |= 1L << i;
+            }
+            out.writeLong(bits);
+        }
+    }
+
+    public static List<Series<Long>> read(InputStream inputStream) throws IOException {
+        return readPartial(inputStream).series;
+    }
+
+    public static Partial readPartial(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) throw new IOException("Unsupported histo version:" + version);
+        int flags = version < 3 ? 0 : in.readUnsignedByte();
+        int count = (int) readVarLong(in);
+        List<Series<Long>> results = new ArrayList<>(count);
+        for (int s = 0; s < count; s++) {
+            int type = version == 1 ? COUNTS : in.readUnsignedByte();
+            String name = in.readUTF();
+            String groupBy = in.readUTF();
+            long start = in.readLong();
+            long delta = in.readLong();
+            int buckets = (int) readVarLong(in);
+            long[] present = new long[(buckets + 63) >>> 6];
+            for (int word = 0; word < present.length; word++) {
+                present[word] = in.readLong();
+            }
+            if (type == DISTINCT) {
+                DistinctTimeSeries series = new DistinctTimeSeries(name, groupBy, start, delta, buckets);
+                for (int i = 0; i < buckets; i++) {
+                    if ((present[i >>> 6] & (1L << i)) != 0) {
+                        byte[] bytes = new byte[(int) readVarLong(in)];
+                        in.readFully(bytes);
+                        series.setSketch(i, HyperLogLogPlus.Builder.build(bytes));
+                    }
+                }
+                results.add(series);
+            } else if (type == COUNTS) {
+                LongTimeSeries series = new LongTimeSeries(name, groupBy, start, delta, buckets);
+                long previous = 0;
+                for (int i = 0; i < buckets; i++) {
+                    if ((present[i >>> 6] & (1L << i)) != 0) {
+                        previous += unZigZag(readVarLong(in));
+                        series.set(i, previous);
+                    }
+                }
+                results.add(series);
+            } else {
+                throw new IOException("Unknown series type:" + type);
+            }
+        }
+        return new Partial(results, (flags & FLAG_CAPPED) != 0);
+    }
+
+    /**
+     * @return the stream to read from - marked and reset so nothing is consumed
+     */
+    public static InputStream markable(InputStream inputStream) {
+        return inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+    }
+
+    public static boolean isBinary(InputStream markable) throws IOException {
+        markable.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (markable.read() != b) return false;
+            }
+            return true;
+        } finally {
+            markable.reset();
+        }
+    }
+
+    /**
+     * Series that are not array backed (i.e. overlay) are laid out using the spacing of their first two points
+     */
+    private static LongTimeSeries toLongSeries(Series<Long> series) {
+        List<Pair<Long, Long>> data = series.data();
+        long start = data.isEmpty() ? 0 : data.get(0).getLeft();
+        long delta = data.size() > 1 ? Math.max(1, data.get(1).getLeft() - start) : 1;
+        LongTimeSeries longSeries = new LongTimeSeries(series.name(), series.groupBy(), start, delta, data.size());
+        data.forEach(point -> {
+            if (point.getRight() != null) longSeries.update(point.getLeft(), point.getRight());
+        });
+        return longSeries;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -45,4 +45,12 @@ public interface HistoCollector extends AutoCloseable {
     void add(long currentTime, long bytePosition, String nextLine);
 
     void updateFileInfo(String filename, String tags);
+
+    /**
+     * Create an empty collector (with its own function state) that can be used from another thread, i.e. when a file is
+     * split and scanned in parallel. Results are folded back using merge()
+     */
+    HistoCollector fork();
+
+    void merge(HistoCollector forked);
 }
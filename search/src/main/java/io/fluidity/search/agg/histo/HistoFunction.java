@@ -14,6 +14,38 @@
 
 package io.fluidity.search.agg.histo;
 
+import io.fluidity.search.Search;
+
 public interface HistoFunction<V, T> {
     V calculate(V currentValue, T newValue, String nextLine, long bytePosition, long time, int histoIndex, String expression);
+
+    /**
+     * The series the value is collected into - i.e. to spread values across sketch bins (see PercentilesHistoAggregator)
+     */
+    default String seriesName(String seriesName, T newValue) {
+        return seriesName;
+    }
+
+    /**
+     * Upper bound on the number of series a collector keeps (Space-Saving heavy hitters) - values that drop out are folded
+     * into the groupBy's 'other' series. 0 is unbounded.
+     */
+    default int seriesLimit() {
+        return 0;
+    }
+
+    /**
+     * The series values are folded into once a collector holds too many (see SimpleHistoCollector.MAX_SERIES). It is shared
+     * across groupBy values - functions that encode structure in the series name (i.e. sketch bins) keep it here.
+     */
+    default String overflowSeriesName(String seriesName) {
+        return SimpleHistoCollector.OVERFLOW;
+    }
+
+    /**
+     * Creates the series values are collected into - i.e. one that holds sketches rather than counts
+     */
+    default Series<Long> newSeries(Search search, String seriesName, String groupBy, long from, long to) {
+        return search.getTimeSeries(seriesName, groupBy, from, to);
+    }
 }
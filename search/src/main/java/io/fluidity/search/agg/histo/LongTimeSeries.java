@@ -0,0 +1,210 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import io.fluidity.util.DateUtil;
+import org.graalvm.collections.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Long valued TimeSeries held in a long[] with a presence bitmap (so 'no value' stays distinct from 0). Same buckets as
+ * TimeSeries; get/update are O(1) index lookups and merging another LongTimeSeries with the same layout is an array add.
+ * The Pair list view (data()) is only built at the edges - i.e. json staging and client formatting.
+ */
+public class LongTimeSeries implements Series<Long> {
+
+    private String name;
+    private String groupBy;
+    private long start;
+    private long delta;
+    private long[] values;
+    private long[] present;
+
+    public LongTimeSeries(String name, String groupBy, long from, long to) {
+        this(name, groupBy, DateUtil.floorMin(from), TimeSeries.bucketDelta(DateUtil.floorMin(to) - DateUtil.floorMin(from)), buckets(from, to));
+    }
+
+    public LongTimeSeries(String name, String groupBy, long start, long delta, int buckets) {
+        this.name = name;
+        this.groupBy = groupBy;
+        this.start = start;
+        this.delta = delta;
+        this.values = new long[buckets];
+        this.present = new long[(buckets + 63) >>> 6];
+    }
+
+    static int buckets(long from, long to) {
+        long duration = DateUtil.floorMin(to) - DateUtil.floorMin(from);
+        return (int) (duration / TimeSeries.bucketDelta(duration)) + 1;
+    }
+
+    @Override
+    public String groupBy() {
+        return groupBy;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int index(long time) {
+        return (int) ((time - start) / delta);
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean has(int index) {
+        return index >= 0 && index < values.length && (present[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Primitive access - check has(index) to distinguish 0 from 'no value'
+     */
+    public long getLong(int index) {
+        return values[index];
+    }
+
+    public void set(int index, long value) {
+        values[index] = value;
+        present[index >>> 6] |= 1L << index;
+    }
+
+    @Override
+    public Long get(long time) {
+        int index = index(time);
+        return has(index) ? values[index] : null;
+    }
+
+    @Override
+    public void update(long time, Long value) {
+        int index = index(time);
+        if (index < 0 || index >= values.length) return;
+        if (value == null) {
+            values[index] = 0;
+            present[index >>> 6] &= ~(1L << index);
+        } else {
+            set(index, value);
+        }
+    }
+
+    @Override
+    public boolean hasData() {
+        for (long word : present) {
+            if (word != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * As TimeSeries.merge - every bucket the other series covers ends up with a value, empty on both sides is 0
+     */
+    @Override
+    public void merge(Series<Long> series) {
+        if (series instanceof LongTimeSeries) {
+            LongTimeSeries other = (LongTimeSeries) series;
+            if (other.start == start && other.delta == delta && other.values.length == values.length) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] += other.values[i];
+                }
+                for (int i = 0; i < values.length; i += 64) {
+                    present[i >>> 6] = values.length - i >= 64 ? -1L : (1L << (values.length - i)) - 1;
+                }
+                return;
+            }
+            for (int i = 0; i < other.values.length; i++) {
+                add(other.start + i * other.delta, other.has(i) ? other.values[i] : 0);
+            }
+            return;
+        }
+        series.data().forEach(point -> add(point.getLeft(), point.getRight() == null ? 0 : point.getRight()));
+    }
+
+    private void add(long time, long value) {
+        int index = index(time);
+        if (index < 0 || index >= values.length) return;
+        set(index, values[index] + value);
+    }
+
+    @Override
+    public List<Pair<Long, Long>> data() {
+        List<Pair<Long, Long>> data = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            data.add(Pair.create(start + i * delta, has(i) ? values[i] : null));
+        }
+        return data;
+    }
+
+    @Override
+    public Collection<Series<Long>> slice(long timeBucket) {
+        Map<Long, Series<Long>> results = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            long time = start + i * delta;
+            long seriesStartTime = DateUtil.floorHour(time);
+            Series<Long> sliced = results.computeIfAbsent(seriesStartTime, k -> new LongTimeSeries(name, groupBy, seriesStartTime, seriesStartTime + timeBucket));
+            if (has(i)) sliced.update(time, values[i]);
+        }
+        return results.values();
+    }
+
+    @Override
+    public long start() {
+        return start;
+    }
+
+    @Override
+    public long end() {
+        return start + (values.length - 1) * delta;
+    }
+
+    /**
+     * Getters to keep the same json (bean) layout as TimeSeries
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getGroupBy() {
+        return groupBy;
+    }
+
+    public List<Pair<Long, Long>> getData() {
+        return data();
+    }
+
+    public long getDelta() {
+        return delta;
+    }
+
+    @Override
+    public String toString() {
+        return "LongTimeSeries{" +
+                "groupBy='" + groupBy + '\'' +
+                " start=" + DateUtil.printTime(start) +
+                " end=" + DateUtil.printTime(end()) +
+                ", name='" + name + '\'' +
+                ", delta=" + delta +
+                '}';
+    }
+}
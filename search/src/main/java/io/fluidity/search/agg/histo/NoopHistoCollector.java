@@ -23,6 +23,15 @@ public class NoopHistoCollector implements HistoCollector {
     public void updateFileInfo(String filename, String tags) {
     }
 
+    @Override
+    public HistoCollector fork() {
+        return this;
+    }
+
+    @Override
+    public void merge(HistoCollector forked) {
+    }
+
     @Override
     public void close() throws Exception {
 
@@ -0,0 +1,133 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import io.fluidity.search.Search;
+import io.fluidity.search.StorageInputStream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * analytic.percentiles(50,95,99) - each extracted value is counted into a QuantileBins bin, and each bin is its own
+ * (count) series named 'series#bin'. Partials merge by adding counts, so the sketch stays a fixed size however many lines
+ * or files are aggregated; the percentiles are read off the merged bins per time bucket.
+ */
+public class PercentilesHistoAggregator extends AbstractHistoAggregator<Long> {
+    private static final String PREFIX = "analytic.percentiles(";
+    private static final char BIN_SEPARATOR = '#';
+    private static final double[] DEFAULT_PERCENTILES = {50, 95, 99};
+
+    public boolean isForMe(String analytic) {
+        return analytic.startsWith(PREFIX);
+    }
+
+    public PercentilesHistoAggregator(Map<String, StorageInputStream> inputStreams, Search search) {
+        super(inputStreams, search);
+    }
+
+    @Override
+    List<Series<Long>> processSeries(Collection<Series<Long>> collectedSeries) {
+        // groupBy -> time -> bin -> count
+        Map<String, Map<Long, TreeMap<Integer, Long>>> groups = new HashMap<>();
+        collectedSeries.forEach(series -> {
+            int separator = series.name().lastIndexOf(BIN_SEPARATOR);
+            if (separator == -1) return;
+            int bin = Integer.parseInt(series.name().substring(separator + 1));
+            Map<Long, TreeMap<Integer, Long>> times = groups.computeIfAbsent(series.groupBy() == null ? "" : series.groupBy(), k -> new HashMap<>());
+            series.data().forEach(point -> {
+                if (point.getRight() != null && point.getRight() > 0) {
+                    times.computeIfAbsent(point.getLeft(), k -> new TreeMap<>()).merge(bin, point.getRight(), Long::sum);
+                }
+            });
+        });
+
+        double[] percentiles = percentiles(search.analyticValue());
+        List<Series<Long>> results = new ArrayList<>();
+        groups.forEach((groupBy, times) -> {
+            List<Series<Long>> groupResults = new ArrayList<>();
+            for (double percentile : percentiles) {
+                groupResults.add(search.getTimeSeries(seriesName(groupBy, percentile), "", search.from, search.to));
+            }
+            times.forEach((time, bins) -> {
+                int[] binNumbers = new int[bins.size()];
+                long[] counts = new long[bins.size()];
+                long total = 0;
+                int i = 0;
+                for (Map.Entry<Integer, Long> entry : bins.entrySet()) {
+                    binNumbers[i] = entry.getKey();
+                    counts[i++] = entry.getValue();
+                    total += entry.getValue();
+                }
+                for (int p = 0; p < percentiles.length; p++) {
+                    groupResults.get(p).update(time, QuantileBins.percentile(binNumbers, counts, i, total, percentiles[p]));
+                }
+            });
+            results.addAll(groupResults);
+        });
+        return results;
+    }
+
+    static double[] percentiles(String analytic) {
+        if (!analytic.startsWith(PREFIX) || analytic.indexOf(')') == -1) return DEFAULT_PERCENTILES;
+        String args = analytic.substring(PREFIX.length(), analytic.indexOf(')')).trim();
+        if (args.isEmpty()) return DEFAULT_PERCENTILES;
+        String[] split = args.split(",");
+        double[] percentiles = new double[split.length];
+        for (int i = 0; i < split.length; i++) {
+            percentiles[i] = Double.parseDouble(split[i].trim());
+        }
+        return percentiles;
+    }
+
+    private static String seriesName(String groupBy, double percentile) {
+        String name = "p" + (percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile));
+        return groupBy.isEmpty() ? name : groupBy + "-" + name;
+    }
+
+    @Override
+    public HistoAggregator clone(Map<String, StorageInputStream> inputStreams, Search search) {
+        return new PercentilesHistoAggregator(inputStreams, search);
+    }
+
+    @Override
+    public HistoFunction<Long, Long> function() {
+        return new HistoFunction<Long, Long>() {
+            @Override
+            public Long calculate(Long currentValue, Long newValue, String nextLine, long bytePosition, long time, int histoIndex, String expression) {
+                return currentValue == null ? 1 : currentValue + 1;
+            }
+
+            @Override
+            public String seriesName(String seriesName, Long newValue) {
+                return newValue == null ? seriesName : seriesName + BIN_SEPARATOR + QuantileBins.bin(newValue);
+            }
+
+            /**
+             * Overflowed values keep their bin - they are reported as the (other) group's percentiles
+             */
+            @Override
+            public String overflowSeriesName(String seriesName) {
+                int separator = seriesName.lastIndexOf(BIN_SEPARATOR);
+                return separator == -1 ? SimpleHistoCollector.OVERFLOW : SimpleHistoCollector.OVERFLOW + seriesName.substring(separator);
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+/**
+ * Log-linear value bins (HDR histogram style): values below 32 get their own bin, above that each power of 2 is split
+ * into 32 bins - so a bin is never wider than ~3% of its values and there are fewer than 1900 of them. Counts per bin are
+ * plain longs, so sketches merge by adding counts.
+ */
+public class QuantileBins {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BINS = 1 << SUB_BITS;
+
+    public static int bin(long value) {
+        if (value < SUB_BINS) return value < 0 ? 0 : (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BINS - 1);
+        return SUB_BINS + (exponent - SUB_BITS) * SUB_BINS + sub;
+    }
+
+    public static long lowerBound(int bin) {
+        if (bin < SUB_BINS) return bin;
+        int exponent = (bin - SUB_BINS) / SUB_BINS + SUB_BITS;
+        long sub = (bin - SUB_BINS) % SUB_BINS;
+        return (1L << exponent) + (sub << (exponent - SUB_BITS));
+    }
+
+    /**
+     * @return the value reported for the bin - the middle of its range
+     */
+    public static long value(int bin) {
+        if (bin < SUB_BINS) return bin;
+        int exponent = (bin - SUB_BINS) / SUB_BINS + SUB_BITS;
+        return lowerBound(bin) + (1L << (exponent - SUB_BITS)) / 2;
+    }
+
+    /**
+     * @param bins   - ascending bin numbers
+     * @param counts - count for each bin
+     * @param total  - sum of counts
+     * @return the value at percentile (0-100)
+     */
+    public static long percentile(int[] bins, long[] counts, int size, long total, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < size; i++) {
+            seen += counts[i];
+            if (seen >= rank) return value(bins[i]);
+        }
+        return size == 0 ? 0 : value(bins[size - 1]);
+    }
+}
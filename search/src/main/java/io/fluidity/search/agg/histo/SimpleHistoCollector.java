@@ -14,6 +14,7 @@
 
 package io.fluidity.search.agg.histo;
 
+import com.clearspring.analytics.stream.StreamSummary;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import io.fluidity.search.Search;
@@ -22,6 +23,7 @@ import org.graalvm.collections.Pair;
 
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -56,6 +58,17 @@ import java.util.stream.StreamSupport;
  *   ]
  */
 public class SimpleHistoCollector implements HistoCollector {
+    /**
+     * Series values are folded into (per groupBy) once they drop out of a bounded set - see HistoFunction.seriesLimit()
+     */
+    public static final String OTHER = "(other)";
+    /**
+     * Budget on the number of distinct series a collector holds - beyond it new series are folded into a single overflow
+     * series (see OVERFLOW) and the staged partial is flagged as capped
+     */
+    public static final int MAX_SERIES = Integer.getInteger("fluidity.histo.series.max", 10_000);
+    public static final String OVERFLOW = "-" + OTHER;
+
     private final long from;
     private final long to;
     private final HistoFunction<Long, Long> function;
@@ -64,6 +77,13 @@ public class SimpleHistoCollector implements HistoCollector {
     private String tags;
     private Search search;
     private final EconomicMap<String, Series<Long>> seriesMap = EconomicMap.create();
+    // Space-Saving candidates when the number of series is bounded
+    private StreamSummary<String> heavyHitters;
+    private int maxSeries = MAX_SERIES;
+    private boolean capped;
+    // groupBy-field names for the current groupBy
+    private final List<String> fieldGroupBys = new ArrayList<>();
+    private String fieldGroupByOf;
 
     public SimpleHistoCollector(OutputStream outputStream, Search search, long from, long to, HistoFunction<Long, Long> histoFunction) {
         this.outputStream = outputStream;
@@ -71,6 +91,7 @@ public class SimpleHistoCollector implements HistoCollector {
         this.from = from;
         this.to = to;
         this.function = histoFunction;
+        this.heavyHitters = histoFunction.seriesLimit() > 0 ? new StreamSummary<>(histoFunction.seriesLimit()) : null;
     }
 
     @Override
@@ -81,40 +102,188 @@ public class SimpleHistoCollector implements HistoCollector {
 
     @Override
     public void add(long currentTime, long bytePosition, String nextLine) {
+        // each field of the expression feeds its own series
+        List<Pair<String, Long>> fields = search.getFieldNamesAndValues(sourceName, nextLine);
+        String groupBy = null;
+        for (int i = 0; i < fields.size(); i++) {
+            Pair<String, Long> seriesNameAndValue = fields.get(i);
+            if (seriesNameAndValue == null) continue;
+            if (groupBy == null) groupBy = search.applyGroupBy(tags, sourceName);
+            add(currentTime, bytePosition, nextLine, fields.size() > 1 ? fieldGroupBy(groupBy, i) : groupBy, seriesNameAndValue);
+        }
+    }
 
-        Pair<String, Long> seriesNameAndValue = search.getFieldNameAndValue(sourceName, nextLine);
-        if (seriesNameAndValue != null) {
-            String groupBy = search.applyGroupBy(tags, sourceName);
-            seriesNameAndValue = Pair.create(groupBy + "-" + seriesNameAndValue.getLeft(), seriesNameAndValue.getRight());
-            Series<Long> series = getSeriesItem(groupBy, seriesNameAndValue.getLeft());
-            Long calculate = function.calculate(series.get(currentTime), seriesNameAndValue.getRight(), nextLine, bytePosition, currentTime, series.index(currentTime), search.expression);
-            series.update(currentTime, calculate);
+    /**
+     * With more than one field each is grouped on its own (groupBy-field) - so values of different fields never share a
+     * series and aggregators that work per groupBy (i.e. percentiles) dont mix them
+     */
+    private String fieldGroupBy(String groupBy, int field) {
+        if (groupBy == null) groupBy = "";
+        if (!groupBy.equals(fieldGroupByOf)) {
+            fieldGroupByOf = groupBy;
+            fieldGroupBys.clear();
         }
+        while (fieldGroupBys.size() <= field) {
+            String fieldName = search.getFieldName(fieldGroupBys.size());
+            fieldGroupBys.add(groupBy.isEmpty() ? fieldName : groupBy + "-" + fieldName);
+        }
+        return fieldGroupBys.get(field);
+    }
+
+    private void add(long currentTime, long bytePosition, String nextLine, String groupBy, Pair<String, Long> seriesNameAndValue) {
+        String seriesName = function.seriesName(groupBy + "-" + seriesNameAndValue.getLeft(), seriesNameAndValue.getRight());
+        if (heavyHitters != null) {
+            String dropped = heavyHitters.offerReturnDropped(seriesName, 1);
+            if (dropped != null) foldIntoOther(dropped);
+        }
+        Series<Long> series = getSeriesItem(groupBy, seriesName);
+        // a sketch's estimate is not needed to offer it a value - and is expensive to keep computing
+        Long currentValue = series instanceof DistinctTimeSeries ? null : series.get(currentTime);
+        Long calculate = function.calculate(currentValue, seriesNameAndValue.getRight(), nextLine, bytePosition, currentTime, series.index(currentTime), search.expression);
+        series.update(currentTime, calculate);
     }
 
     private Series<Long> getSeriesItem(String groupBy, String seriesName) {
-        if (!seriesMap.containsKey(seriesName)){
-            seriesMap.put(seriesName, search.getTimeSeries(seriesName, groupBy, from, to));
+        Series<Long> series = seriesMap.get(seriesName);
+        if (series == null) {
+            if (isOverBudget()) return overflow(seriesName);
+            series = function.newSeries(search, seriesName, groupBy, from, to);
+            seriesMap.put(seriesName, series);
+        }
+        return series;
+    }
+
+    private boolean isOverBudget() {
+        return seriesMap.size() >= maxSeries;
+    }
+
+    /**
+     * Shared across groupBy values (its groupBy is OTHER) so that a high cardinality groupBy cannot add a series per value
+     * either - the function names it, see HistoFunction.overflowSeriesName
+     */
+    private Series<Long> overflow(String seriesName) {
+        capped = true;
+        String overflowName = function.overflowSeriesName(seriesName);
+        Series<Long> series = seriesMap.get(overflowName);
+        if (series == null) {
+            series = function.newSeries(search, overflowName, OTHER, from, to);
+            seriesMap.put(overflowName, series);
+        }
+        return series;
+    }
+
+    private void foldIntoOther(String seriesName) {
+        Series<Long> series = seriesMap.removeKey(seriesName);
+        if (series != null) {
+            getSeriesItem(series.groupBy(), series.groupBy() + "-" + OTHER).merge(series);
+        }
+    }
+
+    public static boolean isOther(Series<?> series) {
+        return series.name() != null && series.name().endsWith("-" + OTHER);
+    }
+
+    @Override
+    public HistoCollector fork() {
+        SimpleHistoCollector forked = new SimpleHistoCollector(null, search.copy(), from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        forked.updateFileInfo(sourceName, tags);
+        forked.maxSeries = maxSeries;
+        return forked;
+    }
+
+    @Override
+    public void merge(HistoCollector forked) {
+        EconomicMap<String, Series<Long>> forkedSeries = ((SimpleHistoCollector) forked).series();
+        capped |= ((SimpleHistoCollector) forked).isCapped();
+        forkedSeries.getKeys().forEach(seriesName -> {
+            Series<Long> series = forkedSeries.get(seriesName);
+            if (seriesMap.containsKey(seriesName)) {
+                seriesMap.get(seriesName).merge(series);
+            } else if (isOverBudget()) {
+                overflow(seriesName).merge(series);
+            } else {
+                seriesMap.put(seriesName, series);
+            }
+        });
+        if (heavyHitters != null) trimToLimit();
+    }
+
+    /**
+     * The candidates of merged collectors can add up to more than the limit - keep those with the highest totals
+     */
+    private void trimToLimit() {
+        List<Series<Long>> candidates = new ArrayList<>();
+        seriesMap.getValues().forEach(series -> {
+            if (!isOther(series)) candidates.add(series);
+        });
+        if (candidates.size() <= heavyHitters.getCapacity()) return;
+        candidates.sort(Comparator.comparingLong(SimpleHistoCollector::total).reversed());
+        candidates.subList(heavyHitters.getCapacity(), candidates.size()).forEach(series -> foldIntoOther(series.name()));
+    }
+
+    private static long total(Series<Long> series) {
+        long total = 0;
+        for (Pair<Long, Long> point : series.data()) {
+            if (point.getRight() != null) total += point.getRight();
         }
-        return seriesMap.get(seriesName);
+        return total;
     }
 
+    /**
+     * Staged partials are written using the HistoBinaryFormat - see toJson() for a client readable form
+     */
     @Override
     public void close() {
+        // forked collectors are merged rather than written
+        if (outputStream == null) return;
+        try {
+            List<Series<Long>> seriesList = StreamSupport.stream(seriesMap.getValues().spliterator(), false).collect(Collectors.toList());
+            HistoBinaryFormat.write(seriesList, capped, outputStream);
+            outputStream.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public String toJson() {
         ObjectMapper objectMapper = new ObjectMapper();
         try {
             objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
 
             List<Series> seriesList = StreamSupport.stream(seriesMap.getValues().spliterator(), false).collect(Collectors.toList());
-            String histoJson = objectMapper.writeValueAsString(new ArrayList(seriesList));
-            outputStream.write(histoJson.getBytes());
-            outputStream.close();
+            return objectMapper.writeValueAsString(new ArrayList(seriesList));
         } catch (Exception e) {
             e.printStackTrace();
+            return "[]";
         }
     }
 
+    /**
+     * Streaming: moves the series collected since the last call into a collector of their own, to be merged into a
+     * running total - null when there are none
+     */
+    public SimpleHistoCollector drain() {
+        if (seriesMap.isEmpty()) return null;
+        SimpleHistoCollector drained = (SimpleHistoCollector) fork();
+        seriesMap.getKeys().forEach(seriesName -> drained.seriesMap.put(seriesName, seriesMap.get(seriesName)));
+        drained.capped = capped;
+        seriesMap.clear();
+        if (heavyHitters != null) heavyHitters = new StreamSummary<>(heavyHitters.getCapacity());
+        return drained;
+    }
+
     public EconomicMap<String, Series<Long>> series() {
         return seriesMap;
     }
+
+    /**
+     * @return true when series were folded into OVERFLOW because maxSeries was reached
+     */
+    public boolean isCapped() {
+        return capped;
+    }
+
+    void setMaxSeries(int maxSeries) {
+        this.maxSeries = maxSeries;
+    }
 }
@@ -69,8 +69,17 @@ public class TimeSeries<T> implements Series<T> {
         return groupBy;
     }
     private void buildHistogram(long from, long to) {
-        long duration = to - from;
-        delta = MINUTE;
+        delta = bucketDelta(to - from);
+        for (long time = from; time <= to; time += delta) {
+            data.add(Pair.create(time, null));
+        }
+    }
+
+    /**
+     * Bucket width for a time range
+     */
+    static long bucketDelta(long duration) {
+        long delta = MINUTE;
         if (duration >= 6 * HOUR) delta = MINUTE * 2;
         if (duration > 12 * HOUR) delta = MINUTE * 3;
         if (duration > 24 * HOUR) delta = MINUTE * 4;
@@ -80,9 +89,7 @@ public class TimeSeries<T> implements Series<T> {
         if (duration > WEEK * 2) delta = DAY;
         if (duration > WEEK * 8) delta = DAY / 2;
         if (duration > WEEK * 12) delta = WEEK;
-        for (long time = from; time <= to; time += delta) {
-            data.add(Pair.create(time, null));
-        }
+        return delta;
     }
 
     @Override
@@ -3,48 +3,117 @@ package io.fluidity.search.field.extractor;
 import io.fluidity.search.Search;
 import org.graalvm.collections.Pair;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Support fieldname and value extraction:
  * field.getKVPair("CPU:") - gets the value
  * field.getJsonPair("CPU:") - gets the value
+ * <p>
+ * A list can be given, i.e. field.getKVPair(CPU:), field.getJsonPair(user) - all of them are evaluated against each line
+ * (json tokens share one JsonFieldScanner pass) and each yields its own series.
  */
 public class FieldExtractor {
     public static final String PREFIX = "field.";
-    private final String expressionPart;
-    private final String typeOf;
-    private final Extractor extractor;
-
+    private final boolean matchAll;
+    private final List<Extractor> extractors = new ArrayList<>();
+    private final List<String> jsonTokens = new ArrayList<>();
+    private final List<String> fieldNames = new ArrayList<>();
+    private final JsonFieldScanner jsonScanner;
+    private final List<Pair<String, Long>> results = new ArrayList<>();
 
     public FieldExtractor(String expression) {
         String[] split = expression.split("\\|");
-        String passedFilenameExpression = split.length > Search.EXPRESSION_PARTS.field.ordinal() ? split[Search.EXPRESSION_PARTS.field.ordinal()].trim() : "";
-        if (passedFilenameExpression.startsWith(PREFIX)) {
-            int startsFrom = expression.indexOf(PREFIX);
-            int endsAt = expression.indexOf(")", startsFrom);
-            int firstBracket = expression.indexOf("(", startsFrom);
-            this.typeOf = expression.substring(startsFrom + PREFIX.length(), firstBracket);
-            this.expressionPart = expression.substring(firstBracket + 1, endsAt);
+        String passedFieldExpression = split.length > Search.EXPRESSION_PARTS.field.ordinal() ? split[Search.EXPRESSION_PARTS.field.ordinal()].trim() : "";
+        this.matchAll = !passedFieldExpression.startsWith(PREFIX);
+
+        int startsFrom = matchAll ? -1 : 0;
+        while (startsFrom != -1) {
+            int firstBracket = passedFieldExpression.indexOf("(", startsFrom);
+            int endsAt = firstBracket == -1 ? -1 : passedFieldExpression.indexOf(")", firstBracket);
+            if (endsAt == -1) break;
+            String typeOf = passedFieldExpression.substring(startsFrom + PREFIX.length(), firstBracket).trim();
+            String expressionPart = passedFieldExpression.substring(firstBracket + 1, endsAt);
 
             if (typeOf.equals("getKVPair")) {
-                this.extractor = new KvPairExtractor(expressionPart);
+                extractors.add(new KvPairExtractor(expressionPart));
+                fieldNames.add(fieldName(expressionPart));
             } else if (typeOf.equals("getJsonPair")) {
-                this.extractor = new KvJsonPairExtractor(expressionPart);
-            } else {
-                this.extractor = null;
+                extractors.add(new JsonToken(jsonTokens.size()));
+                jsonTokens.add(expressionPart);
+                fieldNames.add(fieldName(expressionPart));
             }
-        } else if (passedFilenameExpression.equals("*")) {
-            this.expressionPart = "*";
-            this.typeOf = "*";
-            this.extractor = null;
-        } else {
-            this.expressionPart = "*";
-            this.typeOf = "*";
-            this.extractor = null;
+            startsFrom = passedFieldExpression.indexOf(PREFIX, endsAt + 1);
         }
+        this.jsonScanner = jsonTokens.isEmpty() ? null : new JsonFieldScanner(jsonTokens.toArray(new String[0]));
+    }
+
+    /**
+     * The key/token without its trailing separator (i.e. 'CPU: ' is 'CPU') - made unique by its index when it is repeated
+     */
+    private String fieldName(String expressionPart) {
+        String name = expressionPart.trim();
+        int end = name.length();
+        while (end > 1 && (name.charAt(end - 1) == ':' || name.charAt(end - 1) == '=')) end--;
+        name = name.substring(0, end);
+        return fieldNames.contains(name) ? name + fieldNames.size() : name;
     }
 
+    /**
+     * @return the name of the field at index - used to keep the series of each field apart
+     */
+    public String getFieldName(int index) {
+        return fieldNames.get(index);
+    }
+
+    /**
+     * @return the token of field.getJsonPair(token) when it is the first field - so callers already scanning json can pull it
+     * out in the same pass
+     */
+    public String getJsonToken() {
+        return !extractors.isEmpty() && extractors.get(0) instanceof JsonToken ? jsonTokens.get(((JsonToken) extractors.get(0)).index) : null;
+    }
+
+    /**
+     * @return the first field
+     */
     public Pair<String, Long> getSeriesNameAndValue(String sourceName, String nextLine) {
-        if (expressionPart.equals("*")) return Pair.create(sourceName, 1l);
-        return extractor.getKeyAndValue(sourceName, nextLine);
+        if (matchAll) return Pair.create(sourceName, 1l);
+        if (extractors.isEmpty()) return null;
+        if (jsonScanner != null) jsonScanner.scan(nextLine);
+        return extractors.get(0).getKeyAndValue(sourceName, nextLine);
+    }
+
+    /**
+     * @return an entry per field - null where it didnt match. The list is reused so is only valid until the next call
+     */
+    public List<Pair<String, Long>> getSeriesNamesAndValues(String sourceName, String nextLine) {
+        results.clear();
+        if (matchAll) {
+            results.add(Pair.create(sourceName, 1l));
+            return results;
+        }
+        if (jsonScanner != null) jsonScanner.scan(nextLine);
+        for (int i = 0; i < extractors.size(); i++) {
+            results.add(extractors.get(i).getKeyAndValue(sourceName, nextLine));
+        }
+        return results;
+    }
+
+    /**
+     * Reads a getJsonPair token from the scan of the current line
+     */
+    private class JsonToken implements Extractor {
+        private final int index;
+
+        private JsonToken(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Pair<String, Long> getKeyAndValue(String sourceName, String nextLine) {
+            return jsonScanner.getKeyAndValue(index);
+        }
     }
 }
@@ -0,0 +1,274 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.search.field.extractor;
+
+import org.graalvm.collections.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pulls the values of a set of json keys out of a line in one forward pass - no parse tree and no indexOf scan per key.
+ * It is lenient, lines can be fragments or json-ish log content.
+ * <p>
+ * A token is either a key ("user") - matched at any depth, first occurrence wins - or a dotted path ("meta.uri"). When a
+ * dotted path doesnt exist as nested keys the values of each key are joined instead, i.e. "service.operation" gives
+ * "security.login".
+ * <p>
+ * Not thread safe - results refer to the last scanned line.
+ */
+public class JsonFieldScanner {
+    private static final int MAX_DEPTH = 64;
+
+    private final String[] tokens;
+    // per token: the index of its (full) path, followed by the paths of each segment when dotted
+    private final int[][] tokenPaths;
+    private final String[][] paths;
+    private final String[] pathNames;
+
+    private final boolean[] found;
+    private final boolean[] stringValue;
+    private final int[] valueStart;
+    private final int[] valueEnd;
+    private int foundCount;
+    // paths that match the key waiting for its value
+    private final int[] matched;
+
+    // open containers - whether each is the value of a key (so is part of the path), and the spans of those keys
+    private final boolean[] keyed = new boolean[MAX_DEPTH];
+    private final int[] parentStart = new int[MAX_DEPTH];
+    private final int[] parentEnd = new int[MAX_DEPTH];
+
+    private String line;
+
+    public JsonFieldScanner(final String... tokens) {
+        this.tokens = tokens;
+        this.tokenPaths = new int[tokens.length][];
+        final Map<String, Integer> pathIndex = new LinkedHashMap<>();
+        for (int t = 0; t < tokens.length; t++) {
+            final String[] segments = tokens[t].split("\\.");
+            final int[] tokenPath = new int[segments.length == 1 ? 1 : segments.length + 1];
+            tokenPath[0] = pathIndex.computeIfAbsent(tokens[t], k -> pathIndex.size());
+            for (int s = 0; s < segments.length && segments.length > 1; s++) {
+                tokenPath[s + 1] = pathIndex.computeIfAbsent(segments[s], k -> pathIndex.size());
+            }
+            tokenPaths[t] = tokenPath;
+        }
+        final List<String> names = new ArrayList<>(pathIndex.keySet());
+        this.pathNames = names.toArray(new String[0]);
+        this.paths = new String[pathNames.length][];
+        for (int p = 0; p < paths.length; p++) {
+            paths[p] = pathNames[p].split("\\.");
+        }
+        this.found = new boolean[paths.length];
+        this.stringValue = new boolean[paths.length];
+        this.valueStart = new int[paths.length];
+        this.valueEnd = new int[paths.length];
+        this.matched = new int[paths.length];
+    }
+
+    public int size() {
+        return tokens.length;
+    }
+
+    public String token(final int token) {
+        return tokens[token];
+    }
+
+    public void scan(final String line) {
+        this.line = line;
+        Arrays.fill(found, false);
+        foundCount = 0;
+
+        final int length = line.length();
+        int depth = 0;
+        int parents = 0;
+        int keyStart = -1;
+        int keyEnd = -1;
+        int matchedCount = 0;
+        boolean pendingValue = false;
+        int i = 0;
+        while (i < length && foundCount < paths.length) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                final int end = closingQuote(line, i + 1);
+                if (end == -1) return;
+                if (pendingValue) {
+                    setValues(matchedCount, i + 1, end, true);
+                    pendingValue = false;
+                } else {
+                    final int colon = skipWhitespace(line, end + 1);
+                    if (colon < length && line.charAt(colon) == ':') {
+                        keyStart = i + 1;
+                        keyEnd = end;
+                        matchedCount = match(keyStart, keyEnd, parents);
+                        pendingValue = true;
+                        i = colon + 1;
+                        continue;
+                    }
+                }
+                i = end + 1;
+            } else if (c == '{' || c == '[') {
+                if (depth < MAX_DEPTH) {
+                    keyed[depth] = pendingValue;
+                    if (pendingValue) {
+                        parentStart[parents] = keyStart;
+                        parentEnd[parents] = keyEnd;
+                        parents++;
+                    }
+                }
+                depth++;
+                pendingValue = false;
+                i++;
+            } else if (c == '}' || c == ']') {
+                if (depth > 0) {
+                    depth--;
+                    if (depth < MAX_DEPTH && keyed[depth]) parents--;
+                }
+                pendingValue = false;
+                i++;
+            } else if (pendingValue && !Character.isWhitespace(c)) {
+                // an empty value ("key":,) ends at the same place it starts
+                final int end = literalEnd(line, i);
+                if (end > i) setValues(matchedCount, i, end, false);
+                pendingValue = false;
+                i = Math.max(end, i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the same as KvJsonPairExtractor - (value, 1) for strings, (token, number) for numbers or null when missing
+     */
+    public Pair<String, Long> getKeyAndValue(final int token) {
+        final int[] tokenPath = tokenPaths[token];
+        if (found[tokenPath[0]]) {
+            return toPair(tokenPath[0]);
+        }
+        if (tokenPath.length == 1) {
+            return null;
+        }
+        final StringBuilder joined = new StringBuilder();
+        for (int s = 1; s < tokenPath.length; s++) {
+            if (!found[tokenPath[s]]) return null;
+            if (s > 1) joined.append('.');
+            joined.append(toPair(tokenPath[s]).getLeft());
+        }
+        return Pair.create(joined.toString(), 1L);
+    }
+
+    private Pair<String, Long> toPair(final int path) {
+        if (!stringValue[path]) {
+            final Long number = number(valueStart[path], valueEnd[path]);
+            if (number != null) {
+                return Pair.create(pathNames[path], number);
+            }
+        }
+        // string mode - the value is used as the key, i.e. count how many users
+        return Pair.create(line.substring(valueStart[path], valueEnd[path]), 1L);
+    }
+
+    private int match(final int keyStart, final int keyEnd, final int parents) {
+        int count = 0;
+        for (int p = 0; p < paths.length; p++) {
+            if (found[p]) continue;
+            final String[] path = paths[p];
+            if (path.length == 1) {
+                if (regionEquals(path[0], keyStart, keyEnd)) matched[count++] = p;
+            } else if (path.length == parents + 1 && regionEquals(path[parents], keyStart, keyEnd) && parentsMatch(path, parents)) {
+                matched[count++] = p;
+            }
+        }
+        return count;
+    }
+
+    private boolean parentsMatch(final String[] path, final int parents) {
+        for (int i = 0; i < parents; i++) {
+            if (!regionEquals(path[i], parentStart[i], parentEnd[i])) return false;
+        }
+        return true;
+    }
+
+    private boolean regionEquals(final String name, final int start, final int end) {
+        return name.length() == end - start && line.regionMatches(start, name, 0, name.length());
+    }
+
+    private void setValues(final int matchedCount, final int start, final int end, final boolean isString) {
+        for (int m = 0; m < matchedCount; m++) {
+            final int path = matched[m];
+            found[path] = true;
+            stringValue[path] = isString;
+            valueStart[path] = start;
+            valueEnd[path] = end;
+            foundCount++;
+        }
+    }
+
+    private Long number(final int start, final int end) {
+        if (start == end) return null;
+        final boolean negative = line.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) return null;
+        long value = 0;
+        for (; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                try {
+                    return Double.valueOf(line.substring(start, end)).longValue();
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        // up to 18 digits cannot overflow - longer values are used as strings (as KvPairExtractor does)
+        if (end - (negative ? start + 1 : start) > 18) return null;
+        return negative ? -value : value;
+    }
+
+    private static int closingQuote(final String line, final int from) {
+        for (int i = from; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(final String line, int from) {
+        while (from < line.length() && Character.isWhitespace(line.charAt(from))) from++;
+        return from;
+    }
+
+    private static int literalEnd(final String line, int from) {
+        while (from < line.length()) {
+            final char c = line.charAt(from);
+            if (c == ',' || c == '}' || c == ']' || c == '"' || Character.isWhitespace(c)) break;
+            from++;
+        }
+        return from;
+    }
+}
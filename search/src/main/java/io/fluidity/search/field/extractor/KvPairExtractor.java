@@ -14,35 +14,94 @@
 
 package io.fluidity.search.field.extractor;
 
-import io.fluidity.util.StringUtil;
 import org.graalvm.collections.Pair;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Support "CPU: XXX" - using regexp pattern
+ * Support "CPU: XXX" - the value is the run of non-whitespace following the last occurrence of the key (that has one).
+ * Numeric values give (key, value), anything else (value, 1).
+ * <p>
+ * Plain keys are found with a literal search and the value is parsed in place. Keys containing regex characters still go
+ * through the original '.*(expr)(\S+).*' pattern - but using find() so there is no backtracking over the whole line.
  */
 public class KvPairExtractor implements Extractor {
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
 
+    private final String key;
+    private final String trimmedKey;
     private final Pattern pattern;
 
     public KvPairExtractor(String expressionPart) {
-        String patternString = ".*(" + expressionPart + ")(\\S+).*";
-        this.pattern = Pattern.compile(patternString);
+        this.key = expressionPart;
+        this.trimmedKey = expressionPart.trim();
+        this.pattern = isLiteral(expressionPart) ? null : Pattern.compile("(" + expressionPart + ")(\\S+)");
+    }
+
+    private static boolean isLiteral(String expressionPart) {
+        for (int i = 0; i < expressionPart.length(); i++) {
+            if (REGEX_CHARS.indexOf(expressionPart.charAt(i)) != -1) return false;
+        }
+        return expressionPart.length() > 0;
     }
 
     @Override
     public Pair<String, Long> getKeyAndValue(String sourceName, String nextLine) {
+        if (pattern != null) {
+            return getKeyAndValueFromPattern(nextLine);
+        }
+        int found = nextLine.lastIndexOf(key);
+        while (found != -1) {
+            int valueStart = found + key.length();
+            int valueEnd = valueStart;
+            while (valueEnd < nextLine.length() && !isWhitespace(nextLine.charAt(valueEnd))) valueEnd++;
+            if (valueEnd > valueStart) {
+                return toPair(trimmedKey, nextLine, valueStart, valueEnd);
+            }
+            found = found == 0 ? -1 : nextLine.lastIndexOf(key, found - 1);
+        }
+        return null;
+    }
+
+    private Pair<String, Long> getKeyAndValueFromPattern(String nextLine) {
         Matcher matcher = pattern.matcher(nextLine);
-        if (matcher.matches()) {
-            if (StringUtil.isNumber(matcher.group(2))) {
-                return Pair.create(matcher.group(1).trim(), Long.parseLong(matcher.group(2)));
-            } else {
-                return Pair.create(matcher.group(2).trim(), 1l);
+        int start = -1;
+        int end = -1;
+        String matchedKey = null;
+        // the match with the rightmost start - as the leading '.*' would have given. Matches can overlap (i.e. '[a-z]+:'
+        // in 'a:b:5') so each search starts just after the previous match start rather than after its end
+        int from = 0;
+        while (from <= nextLine.length() && matcher.find(from)) {
+            matchedKey = matcher.group(1);
+            start = matcher.start(2);
+            end = matcher.end(2);
+            from = matcher.start() + 1;
+        }
+        return matchedKey == null ? null : toPair(matchedKey.trim(), nextLine, start, end);
+    }
+
+    private static Pair<String, Long> toPair(String key, String line, int valueStart, int valueEnd) {
+        // up to 18 digits cannot overflow
+        if (valueEnd - valueStart <= 18) {
+            long value = 0;
+            int i = valueStart;
+            for (; i < valueEnd; i++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
+            }
+            if (i == valueEnd) {
+                return Pair.create(key, value);
             }
-        } else {
-            return null;
         }
+        return Pair.create(line.substring(valueStart, valueEnd), 1l);
+    }
+
+    /**
+     * Same as regex \s
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\013' || c == '\f' || c == '\r';
     }
 }
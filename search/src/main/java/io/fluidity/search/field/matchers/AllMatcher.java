@@ -1,5 +1,7 @@
 package io.fluidity.search.field.matchers;
 
+import java.util.function.Predicate;
+
 public class AllMatcher implements PMatcher {
     @Override
     public boolean isForMe(String expression) {
@@ -11,6 +13,16 @@ public class AllMatcher implements PMatcher {
         return true;
     }
 
+    @Override
+    public boolean matches(byte[] line, int offset, int length) {
+        return true;
+    }
+
+    @Override
+    public boolean mayMatch(Predicate<String> mayContain) {
+        return true;
+    }
+
     @Override
     public PMatcher clone(String expr) {
         return this;
@@ -1,19 +1,51 @@
 package io.fluidity.search.field.matchers;
 
+import io.fluidity.util.AhoCorasick;
+import io.fluidity.util.ByteUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class BooleanMatcher implements PMatcher {
     public static final String PREFIX_1 = " AND ";
     public static final String PREFIX_2 = " OR ";
     private List<List<String>> expr;
+    private byte[][][] exprBytes;
+
+    /**
+     * All OR terms in one automaton - each term is tagged with the bit of its AND group; the line matches when every group bit is hit
+     */
+    private AhoCorasick automaton;
+    private long allGroups;
 
     public BooleanMatcher(){
     }
     public BooleanMatcher(String expression) {
         String[] ands = expression.split(" AND ");
         expr = Arrays.stream(ands).map(and -> Arrays.asList(and.split(" OR "))).collect(Collectors.toList());
+        exprBytes = expr.stream()
+                .map(ors -> ors.stream().map(or -> or.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new))
+                .toArray(byte[][][]::new);
+        if (exprBytes.length <= Long.SIZE) {
+            buildAutomaton();
+        }
+    }
+
+    private void buildAutomaton() {
+        List<byte[]> terms = new ArrayList<>();
+        List<Long> masks = new ArrayList<>();
+        for (int group = 0; group < exprBytes.length; group++) {
+            for (byte[] term : exprBytes[group]) {
+                terms.add(term);
+                masks.add(1L << group);
+            }
+        }
+        allGroups = exprBytes.length == Long.SIZE ? -1L : (1L << exprBytes.length) - 1;
+        automaton = new AhoCorasick(terms.toArray(new byte[0][]), masks.stream().mapToLong(Long::longValue).toArray());
     }
 
     @Override
@@ -23,8 +55,35 @@ public class BooleanMatcher implements PMatcher {
 
     @Override
     public boolean matches(String nextLine) {
-        long andCount = expr.stream().filter(exprPart -> exprPart.stream().filter(orPart -> nextLine.contains(orPart)).count() > 0).count();
-        return andCount == expr.size();
+        // the automaton runs over bytes - encoding the line per call would cost more than it saves
+        for (List<String> ors : expr) {
+            boolean found = false;
+            for (int i = 0; i < ors.size() && !found; i++) {
+                found = nextLine.contains(ors.get(i));
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean matches(byte[] line, int offset, int length) {
+        if (automaton != null) {
+            return automaton.scan(line, offset, length, allGroups) == allGroups;
+        }
+        for (byte[][] ors : exprBytes) {
+            boolean found = false;
+            for (int i = 0; i < ors.length && !found; i++) {
+                found = ByteUtil.contains(line, offset, length, ors[i]);
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean mayMatch(Predicate<String> mayContain) {
+        return expr.stream().allMatch(ors -> ors.stream().anyMatch(mayContain));
     }
 
     @Override
@@ -1,17 +1,25 @@
 package io.fluidity.search.field.matchers;
 
+import io.fluidity.util.ByteUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
 public class GrepMatcher implements PMatcher {
     public static final String PREFIX = "record.contains(";
     private final String expr;
+    private final byte[] exprBytes;
 
     public GrepMatcher(String expression) {
         // check if lazy expression being used, i.e. !start with record.contains( - user just applied explicit text i.e. 'error'
         if (!isForMe(expression)) this.expr = expression;
         else this.expr = expression.substring(PREFIX.length(), expression.length() - 1);
+        this.exprBytes = expr.getBytes(StandardCharsets.UTF_8);
     }
 
     public GrepMatcher() {
         this.expr = "NO!";
+        this.exprBytes = expr.getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
@@ -24,6 +32,16 @@ public class GrepMatcher implements PMatcher {
         return nextLine.indexOf(expr) > -1;
     }
 
+    @Override
+    public boolean matches(byte[] line, int offset, int length) {
+        return ByteUtil.contains(line, offset, length, exprBytes);
+    }
+
+    @Override
+    public boolean mayMatch(Predicate<String> mayContain) {
+        return mayContain.test(expr);
+    }
+
     @Override
     public PMatcher clone(String expr) {
         return new GrepMatcher(expr);
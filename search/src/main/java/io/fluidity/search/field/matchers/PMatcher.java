@@ -1,7 +1,20 @@
 package io.fluidity.search.field.matchers;
 
+import java.util.function.Predicate;
+
 public interface PMatcher {
     boolean isForMe(String expression);
     boolean matches(String nextLine);
+
+    /**
+     * Byte level version of matches(String) - runs against line[offset, offset+length) without decoding it
+     */
+    boolean matches(byte[] line, int offset, int length);
+
+    /**
+     * Could any line of a block match - given a (probabilistic) test of whether the block contains a literal.
+     * Used to skip blocks via an index; must never return false for a block that has a matching line.
+     */
+    boolean mayMatch(Predicate<String> mayContain);
     PMatcher clone(String expr);
 }
@@ -1,5 +1,10 @@
 package io.fluidity.search.field.matchers;
 
+import io.fluidity.util.ByteUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -7,9 +12,18 @@ public class PPatternMatcher implements PMatcher {
     public static final String PREFIX = "record.matches(";
     private Pattern pattern;
 
+    /**
+     * Substrings every match must contain - checked before the (slow) regex
+     */
+    private String[] literals = new String[0];
+    private byte[][] literalBytes = new byte[0][];
+
     public PPatternMatcher(String expression) {
         String expr = expression.substring(PREFIX.length(), expression.length()-1);
         pattern = Pattern.compile(expr);
+        List<String> required = RequiredLiterals.extract(expr);
+        literals = required.toArray(new String[0]);
+        literalBytes = required.stream().map(literal -> literal.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
     }
 
     public PPatternMatcher() {
@@ -20,10 +34,29 @@ public class PPatternMatcher implements PMatcher {
 
     @Override
     public boolean matches(String nextLine) {
+        for (String literal : literals) {
+            if (!nextLine.contains(literal)) return false;
+        }
         Matcher matcher = pattern.matcher(nextLine);
         return matcher.matches();
     }
 
+    @Override
+    public boolean matches(byte[] line, int offset, int length) {
+        for (byte[] literal : literalBytes) {
+            if (!ByteUtil.contains(line, offset, length, literal)) return false;
+        }
+        return pattern.matcher(new String(line, offset, length, StandardCharsets.UTF_8)).matches();
+    }
+
+    @Override
+    public boolean mayMatch(Predicate<String> mayContain) {
+        for (String literal : literals) {
+            if (!mayContain.test(literal)) return false;
+        }
+        return true;
+    }
+
     @Override
     public PMatcher clone(String expr) {
         return new PPatternMatcher(expr);
@@ -0,0 +1,125 @@
+package io.fluidity.search.field.matchers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pulls out literal substrings that every match of a regex must contain - lines without them can be rejected before
+ * running the regex. Conservative: alternation, inline flags and quoting give up (no literals); groups, classes and
+ * escapes like \d or \u0041 just end the current literal.
+ */
+public class RequiredLiterals {
+
+    private static final String META = ".[]{}()*+?^$|\\";
+
+    public static List<String> extract(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.contains("|") || regex.contains("(?") || regex.contains("\\Q")) return literals;
+
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    // \d \w \s \b \1 \u0041 \p{Lu} etc
+                    flush(current, literals);
+                    i = skipEscape(regex, i);
+                } else {
+                    current.append(escaped);
+                    i += 2;
+                }
+            } else if (c == '(') {
+                flush(current, literals);
+                i = skipGroup(regex, i);
+            } else if (c == '[') {
+                flush(current, literals);
+                i = skipClass(regex, i);
+            } else if (c == '*' || c == '?' || c == '{') {
+                // the preceding char is optional
+                if (current.length() > 0) current.setLength(current.length() - 1);
+                flush(current, literals);
+                i = c == '{' ? regex.indexOf('}', i) + 1 : i + 1;
+                if (i == 0) return new ArrayList<>();
+            } else if (META.indexOf(c) != -1) {
+                // . + ^ $
+                flush(current, literals);
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        flush(current, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder current, List<String> literals) {
+        if (current.length() > 0) literals.add(current.toString());
+        current.setLength(0);
+    }
+
+    /**
+     * @return the index after the escape at i - including the hex, octal, control char, name or property it carries
+     */
+    private static int skipEscape(String regex, int i) {
+        char escaped = regex.charAt(i + 1);
+        i += 2;
+        switch (escaped) {
+            case 'u':
+                return Math.min(i + 4, regex.length());
+            case 'x':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipPast(regex, i, '}') : Math.min(i + 2, regex.length());
+            case '0':
+                for (int digits = 0; digits < 3 && i < regex.length() && regex.charAt(i) >= '0' && regex.charAt(i) <= '7'; digits++) i++;
+                return i;
+            case 'c':
+                return Math.min(i + 1, regex.length());
+            case 'k':
+                return skipPast(regex, i, '>');
+            case 'p':
+            case 'P':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipPast(regex, i, '}') : Math.min(i + 1, regex.length());
+            case 'N':
+                return skipPast(regex, i, '}');
+            default:
+                // back references can have more than one digit
+                if (Character.isDigit(escaped)) {
+                    while (i < regex.length() && Character.isDigit(regex.charAt(i))) i++;
+                }
+                return i;
+        }
+    }
+
+    private static int skipPast(String regex, int i, char end) {
+        int index = regex.indexOf(end, i);
+        return index == -1 ? regex.length() : index + 1;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '[') i = skipClass(regex, i) - 1;
+            else if (c == '(') depth++;
+            else if (c == ')' && --depth == 0) break;
+        }
+        // a quantifier on the group is skipped as a meta char by the caller
+        return i + 1;
+    }
+
+    private static int skipClass(String regex, int i) {
+        // the first ']' (or '^]') is a literal member of the class
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') i++;
+            else if (c == ']') break;
+        }
+        return i + 1;
+    }
+}
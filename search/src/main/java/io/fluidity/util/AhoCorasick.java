@@ -0,0 +1,113 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton over UTF-8 bytes - tests a set of literals in a single pass over the line.
+ * <p>
+ * Each pattern carries a bit mask (i.e. which group it belongs to); scan() returns the union of the masks of every pattern
+ * found. Failure links are folded into a dense transition table so scanning is one array lookup per byte.
+ */
+public class AhoCorasick {
+    private static final int ALPHABET = 256;
+
+    private int[] transitions;
+    private long[] outputs;
+    private int states = 1;
+
+    public AhoCorasick(final byte[][] patterns, final long[] masks) {
+        transitions = new int[ALPHABET * 16];
+        outputs = new long[16];
+        Arrays.fill(transitions, -1);
+
+        for (int i = 0; i < patterns.length; i++) {
+            int state = 0;
+            for (byte b : patterns[i]) {
+                final int slot = state * ALPHABET + (b & 0xff);
+                if (transitions[slot] == -1) {
+                    // newState() may grow the table - so allocate before the store
+                    final int next = newState();
+                    transitions[slot] = next;
+                }
+                state = transitions[slot];
+            }
+            outputs[state] |= masks[i];
+        }
+        buildFailureLinks();
+    }
+
+    private int newState() {
+        if (states == outputs.length) {
+            outputs = Arrays.copyOf(outputs, states * 2);
+            final int oldLength = transitions.length;
+            transitions = Arrays.copyOf(transitions, oldLength * 2);
+            Arrays.fill(transitions, oldLength, transitions.length, -1);
+        }
+        return states++;
+    }
+
+    /**
+     * Breadth first so the failure state of a node is complete before its children are visited
+     */
+    private void buildFailureLinks() {
+        final int[] fail = new int[states];
+        final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            final int next = transitions[c];
+            if (next == -1) {
+                transitions[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            outputs[state] |= outputs[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                final int slot = state * ALPHABET + c;
+                final int next = transitions[slot];
+                final int failNext = transitions[fail[state] * ALPHABET + c];
+                if (next == -1) {
+                    transitions[slot] = failNext;
+                } else {
+                    fail[next] = failNext;
+                    queue.add(next);
+                }
+            }
+        }
+        transitions = Arrays.copyOf(transitions, states * ALPHABET);
+        outputs = Arrays.copyOf(outputs, states);
+    }
+
+    /**
+     * @param until - stop as soon as all of these bits have been seen
+     * @return union of the masks of the patterns found in bytes[offset, offset+length)
+     */
+    public long scan(final byte[] bytes, final int offset, final int length, final long until) {
+        long found = outputs[0];
+        int state = 0;
+        final int end = offset + length;
+        for (int i = offset; i < end && (found & until) != until; i++) {
+            state = transitions[state * ALPHABET + (bytes[i] & 0xff)];
+            found |= outputs[state];
+        }
+        return found;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.util;
+
+import com.clearspring.analytics.stream.membership.BloomFilter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-block bloom filters of the byte trigrams in a file - stored as a sidecar so searches can skip blocks (or whole files)
+ * that cannot contain a literal. Trigrams rather than whitespace tokens: grep is a substring match, so a token filter would
+ * wrongly rule out 'abc123' in 'txn=abc123,'. A literal may be present when all of its trigrams are.
+ * <p>
+ * Blocks are contiguous and start on a line boundary. Format: int version, int count, count * [long offset, int size, bloom bytes]
+ */
+public class BlockBloomIndex {
+    public static final String SUFFIX = ".bidx";
+    public static final long DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int VERSION = 1;
+    private static final double FALSE_POSITIVE = 0.02;
+    private static final int GRAM = 3;
+
+    private final List<Block> blocks = new ArrayList<>();
+
+    public static BlockBloomIndex build(final InputStream input, final long blockSize) throws IOException {
+        final BlockBloomIndex index = new BlockBloomIndex();
+        final Set<String> grams = new HashSet<>();
+        long blockStart = 0;
+        try (LineScanner scanner = new LineScanner(input)) {
+            while (scanner.next()) {
+                if (scanner.position() - blockStart >= blockSize) {
+                    index.add(blockStart, grams);
+                    blockStart = scanner.position();
+                }
+                addGrams(scanner.buffer(), scanner.lineStart(), scanner.lineLength(), grams);
+            }
+        }
+        // the last block runs to EOF
+        index.add(blockStart, grams);
+        return index;
+    }
+
+    private static void addGrams(final byte[] bytes, final int offset, final int length, final Set<String> grams) {
+        for (int i = offset; i <= offset + length - GRAM; i++) {
+            grams.add(gram(bytes, i));
+        }
+    }
+
+    private static String gram(final byte[] bytes, final int i) {
+        return new String(new char[]{(char) (bytes[i] & 0xff), (char) (bytes[i + 1] & 0xff), (char) (bytes[i + 2] & 0xff)});
+    }
+
+    private void add(final long offset, final Set<String> grams) {
+        final BloomFilter filter = new BloomFilter(Math.max(grams.size(), 1), FALSE_POSITIVE);
+        grams.forEach(filter::add);
+        blocks.add(new Block(offset, filter));
+        grams.clear();
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    public long offset(final int block) {
+        return blocks.get(block).offset;
+    }
+
+    public long end(final int block, final long fileLength) {
+        return block + 1 < blocks.size() ? blocks.get(block + 1).offset : fileLength;
+    }
+
+    public boolean mayContain(final int block, final String literal) {
+        final byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+        final BloomFilter filter = blocks.get(block).filter;
+        for (int i = 0; i <= bytes.length - GRAM; i++) {
+            if (!filter.isPresent(gram(bytes, i))) return false;
+        }
+        return true;
+    }
+
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(VERSION);
+        dos.writeInt(blocks.size());
+        for (Block block : blocks) {
+            final byte[] filter = BloomFilter.serialize(block.filter);
+            dos.writeLong(block.offset);
+            dos.writeInt(filter.length);
+            dos.write(filter);
+        }
+        dos.flush();
+    }
+
+    public static BlockBloomIndex read(final InputStream in) throws IOException {
+        final DataInputStream dis = new DataInputStream(in);
+        final int version = dis.readInt();
+        if (version != VERSION) throw new IOException("Unsupported bloom index version:" + version);
+        final BlockBloomIndex index = new BlockBloomIndex();
+        final int count = dis.readInt();
+        for (int i = 0; i < count; i++) {
+            final long offset = dis.readLong();
+            final byte[] filter = new byte[dis.readInt()];
+            dis.readFully(filter);
+            index.blocks.add(new Block(offset, BloomFilter.deserialize(filter)));
+        }
+        return index;
+    }
+
+    private static class Block {
+        private final long offset;
+        private final BloomFilter filter;
+
+        private Block(long offset, BloomFilter filter) {
+            this.offset = offset;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Helpers for working with (UTF-8) text held in byte[] windows - see {@link LineScanner}
+ */
+public class ByteUtil {
+
+    /**
+     * Same as String.indexOf - but against bytes[offset, offset+length)
+     *
+     * @return the absolute index into bytes, or -1
+     */
+    public static int indexOf(final byte[] bytes, final int offset, final int length, final byte[] find) {
+        if (find.length == 0) return offset;
+        final byte first = find[0];
+        final int max = offset + length - find.length;
+        for (int i = offset; i <= max; i++) {
+            if (bytes[i] != first) {
+                while (++i <= max && bytes[i] != first) ;
+            }
+            if (i <= max) {
+                int j = i + 1;
+                final int end = j + find.length - 1;
+                for (int k = 1; j < end && bytes[j] == find[k]; j++, k++) ;
+                if (j == end) return i;
+            }
+        }
+        return -1;
+    }
+
+    public static int indexOf(final byte[] bytes, final int offset, final int length, final byte find) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == find) return i;
+        }
+        return -1;
+    }
+
+    public static boolean contains(final byte[] bytes, final int offset, final int length, final byte[] find) {
+        return indexOf(bytes, offset, length, find) != -1;
+    }
+
+    /**
+     * Writes the decimal digits of value without going via a String
+     *
+     * @param scratch - reusable buffer of at least 20 bytes
+     * @return number of bytes written
+     */
+    public static int writeLong(final OutputStream out, long value, final byte[] scratch) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            final byte[] bytes = Long.toString(value).getBytes();
+            out.write(bytes);
+            return bytes.length;
+        }
+        int pos = scratch.length;
+        final boolean negative = value < 0;
+        if (negative) value = -value;
+        do {
+            scratch[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        if (negative) scratch[--pos] = '-';
+        final int written = scratch.length - pos;
+        out.write(scratch, pos, written);
+        return written;
+    }
+}
@@ -16,10 +16,11 @@
 
 package io.fluidity.util;
 
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
-import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
 
 /**
  *
@@ -29,8 +30,8 @@ import java.nio.charset.StandardCharsets;
  * - prefix:[timestamp":] LONG
  * - prefix:[timestamp":] LONG_SEC
  *
- * Auto detect ISO formats from data starting with: 2020-11-24T13:31:47.313Z by looking at lines that
- * have char[0] == 2 char[1]=1 char[5]='-' etc
+ * Auto detect ISO formats from data starting with: 2020-11-24T13:31:47.313Z (or log4j style 2020-11-24 13:31:47,313)
+ * by looking at lines that have digits at char[0..3], char[4]='-', char[10]='T' or ' ' etc
  * See https://en.wikipedia.org/wiki/ISO_8601
  *
  * Note: As per the examples:
@@ -38,16 +39,21 @@ import java.nio.charset.StandardCharsets;
  * - UnixLong support with MS and S granularity - 3rd and 4th examples
  * - Indexing into a record by using 'prefix'. i.e. json fields can be accessed - 2,3,4 above
  *
+ * yyyy?MM?dd?HH?mm?ss[?SSS] layouts and LONG/LONG_SEC are parsed by hand, straight from the line; anything else goes
+ * through Joda.
  */
 public class DateTimeExtractor {
+    public static final long NO_TIME = Long.MIN_VALUE;
 
-    private static final String ISO_TIME_FORMAT_MILLIS = "yyyy-MM-dd'T'HH:mm:ss.SSS";
     private static final String JSON_ISO_TIME_PREFIX = "timestamp\":\"";
 
     private DateTimeParser parser;
+    // the parser came from looking at the data (rather than the format) - so it is re-detected when it stops matching
+    private boolean autoDetected;
 
     private String format;
     private String prefix;
+    private String configuredPrefix;
 
     public DateTimeExtractor(final String format){
         if (format == null || format.length() == 0 || format.equals("*")) {
@@ -55,6 +61,7 @@ public class DateTimeExtractor {
         }
         if (format.startsWith("prefix")) {
             prefix = getPrefix(format);
+            configuredPrefix = prefix;
             this.format = format.substring(format.indexOf("]")+1).trim();
         } else {
             this.format = format;
@@ -62,9 +69,13 @@ public class DateTimeExtractor {
 
         if (this.format.equals("LONG")) {
             this.parser = new LongDateTimeParser();
-        }
-        if (this.format.equals("LONG_SEC")) {
+        } else if (this.format.equals("LONG_SEC")) {
             this.parser = new LongSecDateTimeParser();
+        } else {
+            this.parser = FixedDateTimeParser.forPattern(this.format);
+        }
+        if (this.parser != null) {
+            return;
         }
 
         /**
@@ -86,55 +97,255 @@ public class DateTimeExtractor {
         if (line.length() == 0) {
             return currentTime;
         }
-        if (parser == null) {
-            if (isIsoTime(line)) {
-                parser = new JodaDateTimeParser(ISO_TIME_FORMAT_MILLIS);
-            } else if (isJsonIsoTime(line)) {
-                    prefix = JSON_ISO_TIME_PREFIX;
-                    parser = new JodaDateTimeParser(ISO_TIME_FORMAT_MILLIS);
-                } else {
-                return currentTime + guessTimeInterval;
-            }
+        final long time = getTime(line);
+        return time == NO_TIME ? currentTime + guessTimeInterval : time;
+    }
+
+    /**
+     * @return the time of the line or NO_TIME when it doesnt have one - see TimeInterpolator
+     */
+    public long getTime(final String line) {
+        if (parser == null && !detect(line)) {
+            return NO_TIME;
         }
 
+        long time = parse(line);
+        if (time == DateTimeParser.INVALID && autoDetected && detect(line)) {
+            // the layout changed
+            time = parse(line);
+        }
+        return time;
+    }
+
+    private long parse(final String line) {
+        final int from = segmentStart(line);
+        if (from + parser.formatLength() > line.length()) {
+            return DateTimeParser.INVALID;
+        }
         try {
-            return parser.parseString(getStringSegment(line, parser.formatLength()));
+            return parser.parse(line, from);
         } catch (Exception ex) {
-            parser = null;
-            return currentTime + guessTimeInterval;
+            return DateTimeParser.INVALID;
+        }
+    }
+
+    private boolean detect(final String line) {
+        if (isIsoTime(line, 0)) {
+            prefix = configuredPrefix;
+            parser = FixedDateTimeParser.forLine(line, 0);
+        } else {
+            final int offset = line.indexOf(JSON_ISO_TIME_PREFIX);
+            if (offset == -1 || !isIsoTime(line, offset + JSON_ISO_TIME_PREFIX.length())) {
+                return false;
+            }
+            prefix = JSON_ISO_TIME_PREFIX;
+            parser = FixedDateTimeParser.forLine(line, offset + JSON_ISO_TIME_PREFIX.length());
         }
+        autoDetected = true;
+        return true;
     }
 
-    private boolean isJsonIsoTime(final String lineToCheck) {
-        final int offset = lineToCheck.indexOf(JSON_ISO_TIME_PREFIX);
-        if (offset != -1) {
-            return isIsoTime(lineToCheck.substring(offset+JSON_ISO_TIME_PREFIX.length()));
+    private static boolean isIsoTime(final String line, final int offset) {
+        if (line.length() < offset + FixedDateTimeParser.SECONDS_LENGTH) {
+            return false;
         }
-        return false;
+        final char dateTimeSeparator = line.charAt(offset + 10);
+        return isDigits(line, offset, 4) &&
+                line.charAt(offset + 4) == '-' &&
+                line.charAt(offset + 7) == '-' &&
+                (dateTimeSeparator == 'T' || dateTimeSeparator == ' ') &&
+                line.charAt(offset + 13) == ':' &&
+                line.charAt(offset + 16) == ':';
     }
 
-    private static final byte[] sampleLine = "2020-11-24T13:31:47.313Z".getBytes(StandardCharsets.UTF_8);
-    private boolean isIsoTime(final String lineToCheck) {
-        final byte[] bytes = lineToCheck.getBytes(StandardCharsets.UTF_8);
-        return bytes[0] == sampleLine[0] &&
-                bytes[1] == sampleLine[1] &&
-                bytes[4] == sampleLine[4] &&
-                bytes[7] == sampleLine[7] &&
-                bytes[10] == sampleLine[10] && // T
-                bytes[13] == sampleLine[13] && // :
-                bytes[16] == sampleLine[16] && // :
-                bytes[19] == sampleLine[19] && // .
-                bytes[23] == sampleLine[23]; // Z
+    private static boolean isDigits(final String line, final int from, final int length) {
+        for (int i = from; i < from + length; i++) {
+            if (line.charAt(i) < '0' || line.charAt(i) > '9') return false;
+        }
+        return true;
     }
 
-    private String getStringSegment(final String line, final int length) {
-        int from = 0;
-        int to = from + length;
+    private int segmentStart(final String line) {
         if (prefix != null) {
-            from = line.indexOf(prefix) + prefix.length();
-            to = from + length;
+            return line.indexOf(prefix) + prefix.length();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the value of the digits line[from, from + length) or -1 if any are not digits
+     */
+    private static long digits(final String line, final int from, final int length) {
+        long value = 0;
+        for (int i = from; i < from + length; i++) {
+            final int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * yyyy?MM?dd?HH?mm?ss[?SSS] where ? is any separator - i.e. ISO-8601 and log4j (yyyy-MM-dd HH:mm:ss,SSS).
+     * Times are local to the default zone, the same as Joda parsing with DateTimeFormat.forPattern(). The millis of the
+     * last second seen are cached, so lines logged within the same second only need the SSS part parsed.
+     */
+    DateTimeParser parser() {
+        return parser;
+    }
+
+    static class FixedDateTimeParser implements DateTimeParser {
+        private static final String LAYOUT = "yyyy-MM-dd HH:mm:ss.SSS";
+        static final int SECONDS_LENGTH = 19;
+        private static final int MILLIS_LENGTH = 23;
+        private static final int[] SEPARATORS = {4, 7, 10, 13, 16, 19};
+        private static final long DAY = 24 * 60 * 60 * 1000L;
+
+        private final char[] separators;
+        private final int formatLength;
+        private final DateTimeZone zone = DateTimeZone.getDefault();
+
+        private final char[] cachedSecond = new char[SECONDS_LENGTH];
+        private long cachedSecondMillis = INVALID;
+
+        private FixedDateTimeParser(final char[] separators, final int formatLength) {
+            this.separators = separators;
+            this.formatLength = formatLength;
+        }
+
+        /**
+         * @return null when the pattern is not a fixed layout
+         */
+        static FixedDateTimeParser forPattern(final String pattern) {
+            // quoted text (i.e. the 'T' of ISO) is literal - so a letter there is a separator, not a field
+            final StringBuilder unquoted = new StringBuilder(pattern.length());
+            final BitSet literal = new BitSet();
+            boolean inQuote = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                final char c = pattern.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                        literal.set(unquoted.length());
+                        unquoted.append(c);
+                        i++;
+                    } else {
+                        inQuote = !inQuote;
+                    }
+                } else {
+                    if (inQuote) literal.set(unquoted.length());
+                    unquoted.append(c);
+                }
+            }
+            if (unquoted.length() != SECONDS_LENGTH && unquoted.length() != MILLIS_LENGTH) {
+                return null;
+            }
+            final char[] separators = new char[SEPARATORS.length];
+            int separator = 0;
+            for (int i = 0; i < unquoted.length(); i++) {
+                final char expected = LAYOUT.charAt(i);
+                final char actual = unquoted.charAt(i);
+                if (Character.isLetter(expected)) {
+                    if (actual != expected || literal.get(i)) return null;
+                } else {
+                    if (Character.isLetter(actual) && !literal.get(i)) return null;
+                    separators[separator++] = actual;
+                }
+            }
+            return new FixedDateTimeParser(separators, unquoted.length());
+        }
+
+        /**
+         * Takes the separators from the line (which has already passed isIsoTime) - millis are included when present
+         */
+        static FixedDateTimeParser forLine(final String line, final int offset) {
+            final char[] separators = new char[SEPARATORS.length];
+            for (int i = 0; i < SEPARATORS.length - 1; i++) {
+                separators[i] = line.charAt(offset + SEPARATORS[i]);
+            }
+            int formatLength = SECONDS_LENGTH;
+            if (line.length() >= offset + MILLIS_LENGTH) {
+                final char millisSeparator = line.charAt(offset + SECONDS_LENGTH);
+                if ((millisSeparator == '.' || millisSeparator == ',') && isDigits(line, offset + SECONDS_LENGTH + 1, 3)) {
+                    separators[SEPARATORS.length - 1] = millisSeparator;
+                    formatLength = MILLIS_LENGTH;
+                }
+            }
+            return new FixedDateTimeParser(separators, formatLength);
+        }
+
+        @Override
+        public int formatLength() {
+            return formatLength;
+        }
+
+        @Override
+        public long parseString(final String string) {
+            final long time = parse(string, 0);
+            if (time == INVALID) throw new IllegalArgumentException("Invalid format: \"" + string + "\"");
+            return time;
+        }
+
+        @Override
+        public long parse(final String line, final int from) {
+            long secondMillis = cachedSecondMillis;
+            if (secondMillis == INVALID || !isCachedSecond(line, from)) {
+                secondMillis = parseSecond(line, from);
+                if (secondMillis == INVALID) return INVALID;
+                line.getChars(from, from + SECONDS_LENGTH, cachedSecond, 0);
+                cachedSecondMillis = secondMillis;
+            }
+            if (formatLength == SECONDS_LENGTH) {
+                return secondMillis;
+            }
+            if (line.charAt(from + SECONDS_LENGTH) != separators[SEPARATORS.length - 1]) return INVALID;
+            final long millis = digits(line, from + SECONDS_LENGTH + 1, 3);
+            return millis == -1 ? INVALID : secondMillis + millis;
+        }
+
+        private boolean isCachedSecond(final String line, final int from) {
+            for (int i = SECONDS_LENGTH - 1; i >= 0; i--) {
+                if (line.charAt(from + i) != cachedSecond[i]) return false;
+            }
+            return true;
+        }
+
+        private long parseSecond(final String line, final int from) {
+            for (int i = 0; i < SEPARATORS.length - 1; i++) {
+                if (line.charAt(from + SEPARATORS[i]) != separators[i]) return INVALID;
+            }
+            final long year = digits(line, from, 4);
+            final long month = digits(line, from + 5, 2);
+            final long day = digits(line, from + 8, 2);
+            final long hour = digits(line, from + 11, 2);
+            final long minute = digits(line, from + 14, 2);
+            final long second = digits(line, from + 17, 2);
+            if (year == -1 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                    || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return INVALID;
+            }
+            final long local = epochDay(year, month, day) * DAY + ((hour * 60 + minute) * 60 + second) * 1000;
+            // strict, like Joda - a local time in a DST gap is not a valid instant
+            return zone.convertLocalToUTC(local, true);
+        }
+
+        private static long daysInMonth(final long year, final long month) {
+            if (month == 2) {
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            }
+            return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        }
+
+        /**
+         * Days since 1970-01-01 for the proleptic gregorian date - see http://howardhinnant.github.io/date_algorithms.html
+         */
+        private static long epochDay(long year, final long month, final long day) {
+            if (month <= 2) year--;
+            final long era = Math.floorDiv(year, 400);
+            final long yearOfEra = year - era * 400;
+            final long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
         }
-        return line.substring(from, to);
     }
 
     static class JodaDateTimeParser implements DateTimeParser {
@@ -167,6 +378,12 @@ public class DateTimeExtractor {
             return Long.parseLong(string) * 1000L;
         }
 
+        @Override
+        public long parse(final String line, final int from) {
+            final long seconds = digits(line, from, formatLength());
+            return seconds == -1 ? INVALID : seconds * 1000L;
+        }
+
         @Override
         public int formatLength() {
             return 10;
@@ -179,6 +396,12 @@ public class DateTimeExtractor {
             return Long.parseLong(string);
         }
 
+        @Override
+        public long parse(final String line, final int from) {
+            final long millis = digits(line, from, formatLength());
+            return millis == -1 ? INVALID : millis;
+        }
+
         @Override
         public int formatLength() {
             return 13;
@@ -186,8 +409,19 @@ public class DateTimeExtractor {
     }
 
     interface DateTimeParser {
+        long INVALID = NO_TIME;
+
         long parseString(String string);
 
         int formatLength();
+
+        /**
+         * Parses line[from, from + formatLength()) - implementations that can work in place avoid the substring
+         *
+         * @return INVALID (or throws) when the text doesnt match the format
+         */
+        default long parse(final String line, final int from) {
+            return parseString(line.substring(from, from + formatLength()));
+        }
     }
 }
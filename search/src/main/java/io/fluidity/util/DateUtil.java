@@ -20,7 +20,6 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import java.text.SimpleDateFormat;
-import java.util.LinkedList;
 
 public class DateUtil {
 	static int standardTZOffset = 0;//DateTimeZone.getDefault().getOffset(new DateTime());
@@ -181,36 +180,6 @@ public class DateUtil {
         return ((from / (base * MINUTE)) * (base * MINUTE));
     }
 
-
-    /**
-     * Fudge the time interval from the time-span and the size of the file - presume avg line fileLength is 1024 bytes.
-     * Hacky - but very fast.
-     *
-     * @param fromTime
-     * @param toTime
-     * @param fileLength
-     * @return
-     */
-    public static long guessTimeInterval(boolean isCompressed, long fromTime, long toTime, long fileLength, long currentPos, LinkedList<Integer> lengths) {
-		if (isCompressed) {
-			fileLength *= 100;
-		}
-		if (lengths.size() == 0) {
-			return 100;
-		}
-		if (fromTime == 0 || fromTime < toTime - DateUtil.DAY * 30) {
-			fromTime = toTime - DateUtil.HOUR;
-		}
-		if (lengths.size() > 100) lengths.pop();
-		// presume average line fileLength = 1024 bytes;
-		long recentLengthSum = lengths.stream().mapToInt(Integer::intValue).sum();
-		int avgRecentLength = (int) (recentLengthSum / lengths.size());
-		if (avgRecentLength == 0) avgRecentLength = 100;
-		long guessedLineCount = (fileLength - currentPos) / avgRecentLength;
-		if (guessedLineCount == 0) guessedLineCount = 1024;
-		return (toTime - fromTime) / guessedLineCount;
-	}
-
 	public static String printTime(long time) {
 		return DateTimeFormat.longDateTime().print(time);
 	}
@@ -0,0 +1,603 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * zran style random access into a gzip file, stored as a sidecar next to it. The index is built with a (pure java) inflate
+ * pass that records a checkpoint at the first deflate block after every 'span' bytes of output - the compressed bit
+ * position and the last 32KB of output, which is as far back as a deflate block can refer. A read primes a raw Inflater with
+ * the window of the nearest checkpoint before the wanted offset, so only the data after it is inflated.
+ * <p>
+ * Handles multi-member files - the end of each member is kept so reading carries on into the following ones.
+ * <p>
+ * Format: int version, long length, int members, members * [long end], int count, count * [long out, long in, byte bit,
+ * int windowLength, window (deflated)]
+ */
+public class GzipIndex {
+    public static final String SUFFIX = ".gzidx";
+    public static final long DEFAULT_SPAN = 4 * 1024 * 1024;
+    private static final int VERSION = 1;
+    private static final int WINDOW = 32 * 1024;
+    private static final int BUFFER = 64 * 1024;
+
+    /**
+     * Opens the compressed file positioned at the given offset
+     */
+    public interface Source {
+        InputStream open(long offset) throws IOException;
+    }
+
+    private long[] out;
+    private long[] in;
+    private byte[] bit;
+    private byte[][] windows;
+    private int size;
+    private long[] memberEnds;
+    private int members;
+    private long length;
+
+    GzipIndex() {
+        this(new long[16], new long[16], new byte[16], new byte[16][], 0, new long[4], 0, 0);
+    }
+
+    private GzipIndex(long[] out, long[] in, byte[] bit, byte[][] windows, int size, long[] memberEnds, int members, long length) {
+        this.out = out;
+        this.in = in;
+        this.bit = bit;
+        this.windows = windows;
+        this.size = size;
+        this.memberEnds = memberEnds;
+        this.members = members;
+        this.length = length;
+    }
+
+    public static GzipIndex build(final byte[] gz, final long span) throws IOException {
+        final GzipIndex index = new GzipIndex();
+        final Inflate inflate = new Inflate(gz);
+        long lastMark = 0;
+        try {
+            while (inflate.header()) {
+                boolean last;
+                do {
+                    if (inflate.total - lastMark >= span) {
+                        index.add(inflate.total, inflate.bitPosition(), inflate.window());
+                        lastMark = inflate.total;
+                    }
+                    last = inflate.block();
+                } while (!last);
+                index.addMember(inflate.trailer());
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+        if (index.members == 0) throw new IOException("Not in gzip format");
+        index.length = inflate.total;
+        return index;
+    }
+
+    private void add(final long outOffset, final long bitPosition, final byte[] window) {
+        if (size == out.length) {
+            out = Arrays.copyOf(out, size * 2);
+            in = Arrays.copyOf(in, size * 2);
+            bit = Arrays.copyOf(bit, size * 2);
+            windows = Arrays.copyOf(windows, size * 2);
+        }
+        out[size] = outOffset;
+        in[size] = bitPosition >>> 3;
+        bit[size] = (byte) (bitPosition & 7);
+        windows[size] = deflate(window);
+        size++;
+    }
+
+    private void addMember(final long end) {
+        if (members == memberEnds.length) memberEnds = Arrays.copyOf(memberEnds, members * 2);
+        memberEnds[members++] = end;
+    }
+
+    /**
+     * @return uncompressed length of the file
+     */
+    public long length() {
+        return length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the uncompressed data from 'offset' onwards
+     */
+    public InputStream open(final Source source, final long offset) throws IOException {
+        int checkpoint = size - 1;
+        while (checkpoint >= 0 && out[checkpoint] > offset) checkpoint--;
+
+        final InputStream inflated = checkpoint < 0 ? new GZIPInputStream(source.open(0), BUFFER) : new CheckpointInputStream(source, checkpoint);
+        try {
+            skipFully(inflated, offset - (checkpoint < 0 ? 0 : out[checkpoint]));
+        } catch (IOException e) {
+            inflated.close();
+            throw e;
+        }
+        return inflated;
+    }
+
+    private static void skipFully(final InputStream input, long remaining) throws IOException {
+        while (remaining > 0) {
+            final long skipped = input.skip(remaining);
+            if (skipped > 0) {
+                remaining -= skipped;
+            } else if (input.read() == -1) {
+                throw new EOFException("Offset is past the end of the file");
+            } else {
+                remaining--;
+            }
+        }
+    }
+
+    public void write(final OutputStream outputStream) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(outputStream);
+        dos.writeInt(VERSION);
+        dos.writeLong(length);
+        dos.writeInt(members);
+        for (int i = 0; i < members; i++) {
+            dos.writeLong(memberEnds[i]);
+        }
+        dos.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            dos.writeLong(out[i]);
+            dos.writeLong(in[i]);
+            dos.writeByte(bit[i]);
+            dos.writeInt(windows[i].length);
+            dos.write(windows[i]);
+        }
+        dos.flush();
+    }
+
+    public static GzipIndex read(final InputStream inputStream) throws IOException {
+        final DataInputStream dis = new DataInputStream(inputStream);
+        final int version = dis.readInt();
+        if (version != VERSION) throw new IOException("Unsupported gzip index version:" + version);
+        final long length = dis.readLong();
+        final int members = dis.readInt();
+        final long[] memberEnds = new long[Math.max(members, 1)];
+        for (int i = 0; i < members; i++) {
+            memberEnds[i] = dis.readLong();
+        }
+        final int count = dis.readInt();
+        final long[] out = new long[Math.max(count, 1)];
+        final long[] in = new long[Math.max(count, 1)];
+        final byte[] bit = new byte[Math.max(count, 1)];
+        final byte[][] windows = new byte[Math.max(count, 1)][];
+        for (int i = 0; i < count; i++) {
+            out[i] = dis.readLong();
+            in[i] = dis.readLong();
+            bit[i] = dis.readByte();
+            windows[i] = new byte[dis.readInt()];
+            dis.readFully(windows[i]);
+        }
+        return new GzipIndex(out, in, bit, windows, count, memberEnds, members, length);
+    }
+
+    private static byte[] deflate(final byte[] window) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(window);
+            deflater.finish();
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(window.length / 4 + 16);
+            final byte[] buffer = new byte[8 * 1024];
+            while (!deflater.finished()) {
+                baos.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflateWindow(final byte[] deflated) throws IOException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(deflated);
+            final byte[] window = new byte[WINDOW];
+            int length = 0;
+            while (!inflater.finished() && length < WINDOW) {
+                final int inflated = inflater.inflate(window, length, WINDOW - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += inflated;
+            }
+            return length == WINDOW ? window : Arrays.copyOf(window, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt gzip index window", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Inflates the member the checkpoint is in and then any that follow it
+     */
+    private class CheckpointInputStream extends InputStream {
+        private final Source source;
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] skipBuffer = new byte[8 * 1024];
+        private long nextMember = -1;
+        private InputStream current;
+
+        private CheckpointInputStream(final Source source, final int checkpoint) throws IOException {
+            this.source = source;
+            final byte[] window = inflateWindow(windows[checkpoint]);
+            if (window.length > 0) inflater.setDictionary(window);
+            for (int i = 0; i < members; i++) {
+                if (memberEnds[i] > in[checkpoint]) {
+                    if (i + 1 < members) nextMember = memberEnds[i];
+                    break;
+                }
+            }
+            InputStream compressed = new BufferedInputStream(source.open(in[checkpoint]), BUFFER);
+            if (bit[checkpoint] != 0) compressed = new BitShiftInputStream(compressed, bit[checkpoint]);
+            current = new InflaterInputStream(compressed, inflater, BUFFER);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int read = current.read(b, off, len);
+            while (read == -1 && nextMember != -1) {
+                current.close();
+                // GZIPInputStream carries on through any further members itself
+                current = new GZIPInputStream(source.open(nextMember), BUFFER);
+                nextMember = -1;
+                read = current.read(b, off, len);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final int read = read(skipBuffer, 0, (int) Math.min(n, skipBuffer.length));
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Drops the first 'shift' bits so a deflate block that starts mid-byte can be fed to an Inflater (deflate packs bits
+     * from the least significant end)
+     */
+    private static class BitShiftInputStream extends InputStream {
+        private final InputStream in;
+        private final int shift;
+        private int current;
+
+        private BitShiftInputStream(final InputStream in, final int shift) throws IOException {
+            this.in = in;
+            this.shift = shift;
+            this.current = in.read();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (current == -1) return -1;
+            final int next = in.read();
+            final int value = (current >>> shift) | (next == -1 ? 0 : (next << (8 - shift)) & 0xFF);
+            current = next;
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            int read = 0;
+            int value;
+            while (read < len && (value = read()) != -1) {
+                b[off + read++] = (byte) value;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Just enough of RFC 1951/1952 to walk the blocks - output only goes to the 32KB window, CRCs are not checked
+     */
+    private static class Inflate {
+        private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+        private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+        private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537,
+                2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+        private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+        private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+        private static final Huffman FIXED_LENGTHS;
+        private static final Huffman FIXED_DISTANCES;
+
+        static {
+            final int[] lengths = new int[288];
+            Arrays.fill(lengths, 0, 144, 8);
+            Arrays.fill(lengths, 144, 256, 9);
+            Arrays.fill(lengths, 256, 280, 7);
+            Arrays.fill(lengths, 280, 288, 8);
+            FIXED_LENGTHS = new Huffman(lengths, 0, 288);
+            final int[] distances = new int[30];
+            Arrays.fill(distances, 5);
+            FIXED_DISTANCES = new Huffman(distances, 0, 30);
+        }
+
+        private final byte[] data;
+        private final byte[] window = new byte[WINDOW];
+        private final int[] codeLengths = new int[286 + 30];
+        private int pos;
+        private long bitBuffer;
+        private int bitCount;
+        private long total;
+
+        private Inflate(final byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * @return false at the end of the data (or trailing padding)
+         */
+        boolean header() throws IOException {
+            if (pos + 10 > data.length || (data[pos] & 0xFF) != 0x1f || (data[pos + 1] & 0xFF) != 0x8b) return false;
+            if (data[pos + 2] != 8) throw new IOException("Unsupported gzip compression method:" + data[pos + 2]);
+            final int flags = data[pos + 3];
+            pos += 10;
+            if ((flags & 4) != 0) pos += 2 + ((data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8);
+            if ((flags & 8) != 0) while (data[pos++] != 0) ;
+            if ((flags & 16) != 0) while (data[pos++] != 0) ;
+            if ((flags & 2) != 0) pos += 2;
+            return true;
+        }
+
+        /**
+         * @return the offset just past the member trailer
+         */
+        long trailer() throws EOFException {
+            toByteBoundary();
+            pos += 8;
+            if (pos > data.length) throw new EOFException("Unexpected end of gzip data");
+            return pos;
+        }
+
+        long bitPosition() {
+            return (long) pos * 8 - bitCount;
+        }
+
+        /**
+         * @return true for the last block of the member
+         */
+        boolean block() throws IOException {
+            final boolean last = bits(1) == 1;
+            switch (bits(2)) {
+                case 0:
+                    stored();
+                    break;
+                case 1:
+                    codes(FIXED_LENGTHS, FIXED_DISTANCES);
+                    break;
+                case 2:
+                    dynamic();
+                    break;
+                default:
+                    throw new IOException("Invalid deflate block type");
+            }
+            return last;
+        }
+
+        byte[] window() {
+            final int n = (int) Math.min(total, WINDOW);
+            final byte[] copy = new byte[n];
+            final long start = total - n;
+            for (int i = 0; i < n; i++) {
+                copy[i] = window[(int) ((start + i) & (WINDOW - 1))];
+            }
+            return copy;
+        }
+
+        private void stored() throws IOException {
+            toByteBoundary();
+            if (pos + 4 > data.length) throw new EOFException("Unexpected end of gzip data");
+            final int len = (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8;
+            final int nlen = (data[pos + 2] & 0xFF) | (data[pos + 3] & 0xFF) << 8;
+            if (len != (~nlen & 0xFFFF)) throw new IOException("Invalid stored block length");
+            pos += 4;
+            if (pos + len > data.length) throw new EOFException("Unexpected end of gzip data");
+            for (int i = 0; i < len; i++) {
+                window[(int) (total++ & (WINDOW - 1))] = data[pos + i];
+            }
+            pos += len;
+        }
+
+        private void dynamic() throws IOException {
+            final int lengthCodes = bits(5) + 257;
+            final int distanceCodes = bits(5) + 1;
+            final int codeLengthCodes = bits(4) + 4;
+            if (lengthCodes > 286 || distanceCodes > 30) throw new IOException("Invalid dynamic block header");
+
+            Arrays.fill(codeLengths, 0, 19, 0);
+            for (int i = 0; i < codeLengthCodes; i++) {
+                codeLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+            }
+            final Huffman codeLengthCode = new Huffman(codeLengths, 0, 19);
+
+            final int count = lengthCodes + distanceCodes;
+            int index = 0;
+            while (index < count) {
+                final int symbol = codeLengthCode.decode(this);
+                if (symbol < 16) {
+                    codeLengths[index++] = symbol;
+                    continue;
+                }
+                int value = 0;
+                int repeat;
+                if (symbol == 16) {
+                    if (index == 0) throw new IOException("Repeat with no previous code length");
+                    value = codeLengths[index - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (index + repeat > count) throw new IOException("Too many code lengths");
+                while (repeat-- > 0) codeLengths[index++] = value;
+            }
+            if (codeLengths[256] == 0) throw new IOException("Missing end of block code");
+            codes(new Huffman(codeLengths, 0, lengthCodes), new Huffman(codeLengths, lengthCodes, distanceCodes));
+        }
+
+        private void codes(final Huffman lengths, final Huffman distances) throws IOException {
+            while (true) {
+                int symbol = lengths.decode(this);
+                if (symbol < 256) {
+                    window[(int) (total++ & (WINDOW - 1))] = (byte) symbol;
+                } else if (symbol == 256) {
+                    return;
+                } else {
+                    symbol -= 257;
+                    if (symbol >= LENGTH_BASE.length) throw new IOException("Invalid length code");
+                    final int len = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                    final int code = distances.decode(this);
+                    if (code >= DISTANCE_BASE.length) throw new IOException("Invalid distance code");
+                    final int distance = DISTANCE_BASE[code] + bits(DISTANCE_EXTRA[code]);
+                    if (distance > total) throw new IOException("Distance too far back");
+                    for (int i = 0; i < len; i++) {
+                        window[(int) (total & (WINDOW - 1))] = window[(int) ((total - distance) & (WINDOW - 1))];
+                        total++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return true when n bits are buffered - false only near the end of the data
+         */
+        private boolean fill(final int n) {
+            while (bitCount <= 56 && pos < data.length) {
+                bitBuffer |= (data[pos++] & 0xFFL) << bitCount;
+                bitCount += 8;
+            }
+            return bitCount >= n;
+        }
+
+        private int bits(final int n) throws EOFException {
+            if (bitCount < n && !fill(n)) throw new EOFException("Unexpected end of gzip data");
+            final int value = (int) (bitBuffer & ((1L << n) - 1));
+            drop(n);
+            return value;
+        }
+
+        private void drop(final int n) {
+            bitBuffer >>>= n;
+            bitCount -= n;
+        }
+
+        /**
+         * Discard the partial byte and hand back any whole bytes already buffered
+         */
+        private void toByteBoundary() {
+            pos -= bitCount >>> 3;
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+    }
+
+    /**
+     * Canonical huffman decoding - a table for codes up to FAST bits, longer ones are walked a bit at a time
+     */
+    private static class Huffman {
+        private static final int FAST = 9;
+        private final int[] counts = new int[16];
+        private final int[] symbols;
+        private final int[] fast = new int[1 << FAST];
+
+        private Huffman(final int[] lengths, final int offset, final int n) {
+            symbols = new int[n];
+            for (int i = 0; i < n; i++) counts[lengths[offset + i]]++;
+            final int[] offsets = new int[16];
+            for (int len = 1; len < 15; len++) offsets[len + 1] = offsets[len] + counts[len];
+            for (int i = 0; i < n; i++) {
+                if (lengths[offset + i] != 0) symbols[offsets[lengths[offset + i]]++] = i;
+            }
+
+            int code = 0;
+            int index = 0;
+            for (int len = 1; len <= FAST; len++) {
+                for (int k = 0; k < counts[len]; k++) {
+                    final int reversed = Integer.reverse(code) >>> (32 - len);
+                    for (int fill = reversed; fill < fast.length; fill += 1 << len) {
+                        fast[fill] = symbols[index] << 4 | len;
+                    }
+                    code++;
+                    index++;
+                }
+                code <<= 1;
+            }
+        }
+
+        private int decode(final Inflate inflate) throws IOException {
+            if (inflate.fill(FAST)) {
+                final int entry = fast[(int) (inflate.bitBuffer & ((1 << FAST) - 1))];
+                if (entry != 0) {
+                    inflate.drop(entry & 15);
+                    return entry >>> 4;
+                }
+            }
+            int code = 0;
+            int first = 0;
+            int index = 0;
+            for (int len = 1; len < 16; len++) {
+                code |= inflate.bits(1);
+                final int count = counts[len];
+                if (code - count < first) return symbols[index + (code - first)];
+                index += count;
+                first += count;
+                first <<= 1;
+                code <<= 1;
+            }
+            throw new IOException("Invalid huffman code");
+        }
+    }
+}
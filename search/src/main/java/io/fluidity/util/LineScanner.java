@@ -0,0 +1,150 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds line boundaries directly on a reused byte[] window - no decoding and no per-line allocation.
+ * After each call to next() the current line is available as buffer()[lineStart() .. lineStart() + lineLength()),
+ * with the '\n' (and any trailing '\r') excluded.
+ * <p>
+ * Note: the buffer is reused - line contents are only valid until the next call to next().
+ */
+public class LineScanner implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private byte[] buffer;
+
+    // valid data in the buffer is [0, limit)
+    private int limit;
+    // start of the next unconsumed line
+    private int cursor;
+    private boolean eof;
+
+    private int lineStart;
+    private int lineLength;
+    // stream offset of buffer[0]
+    private long bufferPosition;
+    private long linePosition;
+
+    public LineScanner(final InputStream input) {
+        this(input, DEFAULT_BUFFER_SIZE);
+    }
+
+    public LineScanner(final InputStream input, final int bufferSize) {
+        this.input = input;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return false when the stream is exhausted
+     */
+    public boolean next() throws IOException {
+        int scanFrom = cursor;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(cursor, i);
+                    cursor = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (cursor < limit) {
+                    setLine(cursor, limit);
+                    cursor = limit;
+                    return true;
+                }
+                return false;
+            }
+            scanFrom = limit - cursor;
+            fill();
+        }
+    }
+
+    private void setLine(final int from, final int eol) {
+        int to = eol;
+        if (to > from && buffer[to - 1] == '\r') to--;
+        lineStart = from;
+        lineLength = to - from;
+        linePosition = bufferPosition + from;
+    }
+
+    /**
+     * Compacts the unconsumed tail to the front of the buffer (growing it when a line is longer than the buffer) and reads more data
+     */
+    private void fill() throws IOException {
+        final int remaining = limit - cursor;
+        if (cursor > 0) {
+            System.arraycopy(buffer, cursor, buffer, 0, remaining);
+            bufferPosition += cursor;
+            cursor = 0;
+            limit = remaining;
+        }
+        if (limit == buffer.length) {
+            final byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+        final int read = input.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int lineStart() {
+        return lineStart;
+    }
+
+    public int lineLength() {
+        return lineLength;
+    }
+
+    /**
+     * @return byte offset of the current line within the stream
+     */
+    public long position() {
+        return linePosition;
+    }
+
+    /**
+     * @return byte offset of the line after the current one - known without reading it
+     */
+    public long nextPosition() {
+        return bufferPosition + cursor;
+    }
+
+    /**
+     * Only call this for lines that are needed as a String (i.e. they matched)
+     */
+    public String lineAsString() {
+        return new String(buffer, lineStart, lineLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
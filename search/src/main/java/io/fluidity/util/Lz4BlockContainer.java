@@ -0,0 +1,394 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fluidity's layout for re-compressed files - a standard LZ4 frame of independent blocks that each end on a line,
+ * followed by a skippable frame holding a footer with every block's time range, line count and offsets. Any LZ4 reader
+ * can still read it from the start, while a search reads the footer and only decompresses the blocks that overlap its
+ * time window.
+ * <p>
+ * Footer: int version, int count, count * [long in, int inLength, long out, int outLength, int lines, long minTime,
+ * long maxTime] - the file ends with int footerLength, int FOOTER_MAGIC
+ */
+public class Lz4BlockContainer {
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x184D2204;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A5F;
+    private static final int FOOTER_MAGIC = 0x464C4258;
+    private static final int TRAILER = 8;
+    private static final int TAIL = 64 * 1024;
+    private static final int BLOCK_ENTRY = 8 + 4 + 8 + 4 + 4 + 8 + 8;
+
+    /**
+     * Opens the container file positioned at the given offset
+     */
+    public interface Source {
+        InputStream open(long offset) throws IOException;
+    }
+
+    private final List<Block> blocks;
+
+    private Lz4BlockContainer(List<Block> blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * Re-compresses 'input' into blocks of at most blockSize bytes, each cut after the last full line that fits
+     *
+     * @return the container that was written
+     */
+    public static Lz4BlockContainer write(final InputStream input, final OutputStream output, final String timeFormat, final int blockSize) throws IOException {
+        final int blockSizeId = blockSizeId(blockSize);
+        final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor(timeFormat);
+        final List<Block> blocks = new ArrayList<>();
+        final byte[] buffer = new byte[blockSize];
+        final byte[] compressed = new byte[compressor.maxCompressedLength(blockSize)];
+        final byte[] word = new byte[4];
+
+        final byte[] descriptor = {0x60, (byte) (blockSizeId << 4)};
+        writeIntLE(output, word, MAGIC);
+        output.write(descriptor);
+        output.write((XXHashFactory.fastestInstance().hash32().hash(descriptor, 0, 2, 0) >> 8) & 0xFF);
+        long in = 7;
+        long out = 0;
+
+        int filled = 0;
+        while ((filled += readFully(input, buffer, filled, blockSize - filled)) > 0) {
+            int length = filled;
+            if (filled == blockSize) {
+                final int newline = lastIndexOf(buffer, filled, (byte) '\n');
+                // a line longer than a block is split
+                if (newline != -1) length = newline + 1;
+            }
+            final Block block = stats(dateTimeExtractor, buffer, length);
+
+            final int compressedLength = compressor.compress(buffer, 0, length, compressed, 0, compressed.length);
+            if (compressedLength < length) {
+                writeIntLE(output, word, compressedLength);
+                output.write(compressed, 0, compressedLength);
+            } else {
+                writeIntLE(output, word, length | 0x80000000);
+                output.write(buffer, 0, length);
+            }
+            final int inLength = 4 + Math.min(compressedLength, length);
+            blocks.add(new Block(in, inLength, out, length, block.lines, block.minTime, block.maxTime));
+            in += inLength;
+            out += length;
+
+            System.arraycopy(buffer, length, buffer, 0, filled - length);
+            filled -= length;
+        }
+        // end mark
+        writeIntLE(output, word, 0);
+
+        final Lz4BlockContainer container = new Lz4BlockContainer(blocks);
+        container.writeFooter(output, word);
+        output.flush();
+        return container;
+    }
+
+    private void writeFooter(final OutputStream output, final byte[] word) throws IOException {
+        final ByteArrayOutputStream footer = new ByteArrayOutputStream(8 + blocks.size() * BLOCK_ENTRY + TRAILER);
+        final DataOutputStream dos = new DataOutputStream(footer);
+        dos.writeInt(VERSION);
+        dos.writeInt(blocks.size());
+        for (Block block : blocks) {
+            dos.writeLong(block.in);
+            dos.writeInt(block.inLength);
+            dos.writeLong(block.out);
+            dos.writeInt(block.outLength);
+            dos.writeInt(block.lines);
+            dos.writeLong(block.minTime);
+            dos.writeLong(block.maxTime);
+        }
+        // skippable frame magic and size + the payload
+        dos.writeInt(8 + footer.size() + TRAILER);
+        dos.writeInt(FOOTER_MAGIC);
+
+        writeIntLE(output, word, SKIPPABLE_MAGIC);
+        writeIntLE(output, word, footer.size());
+        footer.writeTo(output);
+    }
+
+    /**
+     * Reads the tail of the file in one go - it holds the whole footer unless the file has thousands of blocks
+     *
+     * @return null when the file has no footer - i.e. it is a plain LZ4 file, or fileLength is not its stored length
+     */
+    public static Lz4BlockContainer read(final Source source, final long fileLength) throws IOException {
+        if (fileLength < 8 + TRAILER) return null;
+        final int tailLength = (int) Math.min(fileLength, TAIL);
+        final byte[] tail;
+        try (InputStream input = source.open(fileLength - tailLength)) {
+            tail = input.readNBytes(tailLength);
+        }
+        if (tail.length != tailLength) return null;
+        final ByteBuffer trailer = ByteBuffer.wrap(tail, tailLength - TRAILER, TRAILER);
+        final int footerLength = trailer.getInt();
+        if (trailer.getInt() != FOOTER_MAGIC || footerLength < 8 + TRAILER || footerLength > fileLength) return null;
+
+        if (footerLength <= tailLength) {
+            return readFooter(new DataInputStream(new ByteArrayInputStream(tail, tailLength - footerLength, footerLength)));
+        }
+        try (DataInputStream footer = new DataInputStream(new BufferedInputStream(source.open(fileLength - footerLength)))) {
+            return readFooter(footer);
+        }
+    }
+
+    private static Lz4BlockContainer readFooter(final DataInputStream footer) throws IOException {
+        footer.readFully(new byte[8]);
+        final int version = footer.readInt();
+        if (version != VERSION) throw new IOException("Unsupported container version:" + version);
+        final int count = footer.readInt();
+        final List<Block> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            blocks.add(new Block(footer.readLong(), footer.readInt(), footer.readLong(), footer.readInt(), footer.readInt(),
+                    footer.readLong(), footer.readLong()));
+        }
+        return new Lz4BlockContainer(blocks);
+    }
+
+    public List<Block> blocks() {
+        return blocks;
+    }
+
+    /**
+     * @return uncompressed length
+     */
+    public long length() {
+        return blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).out + blocks.get(blocks.size() - 1).outLength;
+    }
+
+    /**
+     * @return earliest time of any line, or DateTimeExtractor.NO_TIME
+     */
+    public long fromTime() {
+        return blocks.stream().mapToLong(block -> block.minTime).filter(time -> time != Long.MIN_VALUE).min().orElse(DateTimeExtractor.NO_TIME);
+    }
+
+    /**
+     * @return latest time of any line, or DateTimeExtractor.NO_TIME
+     */
+    public long toTime() {
+        return blocks.stream().mapToLong(block -> block.maxTime).filter(time -> time != Long.MAX_VALUE).max().orElse(DateTimeExtractor.NO_TIME);
+    }
+
+    /**
+     * @return the uncompressed [from, to) offsets of the blocks that can have lines in the time window, in file order
+     */
+    public long[][] ranges(final long from, final long to) {
+        return ranges(from, to, 0);
+    }
+
+    /**
+     * Adjacent matching blocks are merged into ranges of up to mergeLength bytes (a single block can be longer) so a
+     * scan isnt one task per block
+     *
+     * @return [from, to, minTime, maxTime] of each range, in file order - the times are NO_TIME when none of its lines had one
+     */
+    public long[][] ranges(final long from, final long to, final long mergeLength) {
+        final List<long[]> ranges = new ArrayList<>();
+        long[] range = null;
+        for (Block block : blocks) {
+            if (block.minTime >= to || block.maxTime < from) continue;
+            if (range == null || range[1] != block.out || range[1] - range[0] + block.outLength > mergeLength) {
+                range = new long[]{block.out, block.out, DateTimeExtractor.NO_TIME, DateTimeExtractor.NO_TIME};
+                ranges.add(range);
+            }
+            range[1] = block.out + block.outLength;
+            // a block without times (MIN/MAX) says nothing about the range
+            if (block.minTime != Long.MIN_VALUE) {
+                range[2] = range[2] == DateTimeExtractor.NO_TIME ? block.minTime : Math.min(range[2], block.minTime);
+                range[3] = range[3] == DateTimeExtractor.NO_TIME ? block.maxTime : Math.max(range[3], block.maxTime);
+            }
+        }
+        return ranges.toArray(new long[0][]);
+    }
+
+    /**
+     * @return the uncompressed data from 'offset' onwards - decompressing from the block that holds it
+     */
+    public InputStream open(final Source source, final long offset) throws IOException {
+        int index = 0;
+        while (index < blocks.size() - 1 && blocks.get(index + 1).out <= offset) index++;
+        if (blocks.isEmpty() || offset >= length()) return InputStream.nullInputStream();
+        return new BlockInputStream(source, index, (int) (offset - blocks.get(index).out));
+    }
+
+    /**
+     * Lines and min/max time of buffer[0, length) - a block without any times overlaps every window
+     */
+    private static Block stats(final DateTimeExtractor dateTimeExtractor, final byte[] buffer, final int length) {
+        int lines = 0;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int start = 0;
+        while (start < length) {
+            int end = ByteUtil.indexOf(buffer, start, length - start, (byte) '\n');
+            if (end == -1) end = length;
+            lines++;
+            final long time = dateTimeExtractor.getTime(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+            if (time != DateTimeExtractor.NO_TIME) {
+                minTime = Math.min(minTime, time);
+                maxTime = Math.max(maxTime, time);
+            }
+            start = end + 1;
+        }
+        if (minTime > maxTime) {
+            minTime = Long.MIN_VALUE;
+            maxTime = Long.MAX_VALUE;
+        }
+        return new Block(0, 0, 0, length, lines, minTime, maxTime);
+    }
+
+    /**
+     * Smallest LZ4 frame block maximum (64KB, 256KB, 1MB or 4MB) that holds blockSize
+     */
+    private static int blockSizeId(final int blockSize) {
+        for (int id = 4; id <= 7; id++) {
+            if (blockSize <= 1 << (8 + 2 * id)) return id;
+        }
+        throw new IllegalArgumentException("Block size is larger than 4MB:" + blockSize);
+    }
+
+    private static int lastIndexOf(final byte[] bytes, final int length, final byte find) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == find) return i;
+        }
+        return -1;
+    }
+
+    private static int readFully(final InputStream input, final byte[] b, final int off, final int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            final int read = input.read(b, off + total, len - total);
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeIntLE(final OutputStream output, final byte[] word, final int value) throws IOException {
+        word[0] = (byte) value;
+        word[1] = (byte) (value >>> 8);
+        word[2] = (byte) (value >>> 16);
+        word[3] = (byte) (value >>> 24);
+        output.write(word);
+    }
+
+    public static class Block {
+        public final long in;
+        public final int inLength;
+        public final long out;
+        public final int outLength;
+        public final int lines;
+        public final long minTime;
+        public final long maxTime;
+
+        Block(long in, int inLength, long out, int outLength, int lines, long minTime, long maxTime) {
+            this.in = in;
+            this.inLength = inLength;
+            this.out = out;
+            this.outLength = outLength;
+            this.lines = lines;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+    }
+
+    /**
+     * Decompresses one block at a time, from the given block to the end of the frame
+     */
+    private class BlockInputStream extends InputStream {
+        private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+        private final InputStream input;
+        private final byte[] single = new byte[1];
+        private final byte[] word = new byte[4];
+        private int next;
+        private byte[] compressed = new byte[0];
+        private byte[] data = new byte[0];
+        private int length;
+        private int position;
+
+        private BlockInputStream(final Source source, final int first, final int skip) throws IOException {
+            this.input = new BufferedInputStream(source.open(blocks.get(first).in), 64 * 1024);
+            this.next = first;
+            if (decompressNext()) position = skip;
+        }
+
+        private boolean decompressNext() throws IOException {
+            if (next == blocks.size()) return false;
+            final Block block = blocks.get(next++);
+            final int compressedLength = block.inLength - 4;
+            if (compressed.length < compressedLength) compressed = new byte[compressedLength];
+            if (data.length < block.outLength) data = new byte[block.outLength];
+            if (readFully(input, word, 0, 4) != 4 || readFully(input, compressed, 0, compressedLength) != compressedLength) {
+                throw new EOFException("Unexpected end of LZ4 data");
+            }
+            if (compressedLength == block.outLength) {
+                System.arraycopy(compressed, 0, data, 0, compressedLength);
+                length = compressedLength;
+            } else {
+                length = decompressor.decompress(compressed, 0, compressedLength, data, 0, block.outLength);
+            }
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            while (position == length) {
+                if (!decompressNext()) return -1;
+            }
+            final int read = Math.min(len, length - position);
+            System.arraycopy(data, position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
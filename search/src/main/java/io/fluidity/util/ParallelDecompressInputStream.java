@@ -0,0 +1,374 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses files made of independently compressed pieces on an executor - bgzip style gzip (each member carries its
+ * size in a 'BC' extra field) and LZ4 frames with independent blocks. The pieces are read in order on the calling thread,
+ * up to 'readAhead' of them are decompressed at the same time and they are handed back in file order.
+ * <p>
+ * Use {@link #open} - anything else falls back to the usual sequential GZIPInputStream/LZ4FrameInputStream.
+ */
+public class ParallelDecompressInputStream extends InputStream {
+    private static final int BUFFER = 64 * 1024;
+    private static final int BGZF_HEADER = 18;
+    private static final int BGZF_MAX_SIZE = 64 * 1024;
+    private static final int LZ4_MAGIC = 0x184D2204;
+
+    private final Pieces pieces;
+    private final ExecutorService executor;
+    private final int readAhead;
+    private final ArrayDeque<Future<Piece>> pending = new ArrayDeque<>();
+    private final byte[] single = new byte[1];
+    private boolean exhausted;
+    private Piece current;
+    private int position;
+
+    private ParallelDecompressInputStream(final Pieces pieces, final ExecutorService executor, final int readAhead) {
+        this.pieces = pieces;
+        this.executor = executor;
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * @param name - the file name, .gz and .lz4 are decompressed and anything else is returned as it is
+     */
+    public static InputStream open(final InputStream compressed, final String name, final ExecutorService executor, final int readAhead) throws IOException {
+        final boolean gzip = name.endsWith(".gz");
+        if (!gzip && !name.endsWith(".lz4")) return compressed;
+
+        final BufferedInputStream input = new BufferedInputStream(compressed, BUFFER);
+        final byte[] header = peek(input, BGZF_HEADER);
+        if (gzip) {
+            return readAhead > 1 && isBgzf(header, header.length) ?
+                    new ParallelDecompressInputStream(new GzipMembers(input), executor, readAhead) : new GZIPInputStream(input, BUFFER);
+        }
+        return readAhead > 1 && isIndependentLz4(header) ?
+                new ParallelDecompressInputStream(new Lz4Blocks(input), executor, readAhead) : new LZ4FrameInputStream(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) return 0;
+        while (current == null || position == current.length) {
+            if (!advance()) return -1;
+        }
+        final int read = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    private boolean advance() throws IOException {
+        fill();
+        final Future<Piece> next = pending.poll();
+        if (current != null) {
+            pieces.release(current);
+            current = null;
+        }
+        if (next == null) return false;
+        try {
+            current = next.get();
+            position = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Decompression failed", e.getCause());
+        }
+        // keep the executor busy while this piece is consumed
+        fill();
+        return true;
+    }
+
+    private void fill() throws IOException {
+        while (!exhausted && pending.size() < readAhead) {
+            final Callable<Piece> piece = pieces.next();
+            if (piece == null) {
+                exhausted = true;
+            } else {
+                pending.add(executor.submit(piece));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pending.forEach(future -> future.cancel(true));
+        pending.clear();
+        pieces.close();
+    }
+
+    private static byte[] peek(final BufferedInputStream input, final int length) throws IOException {
+        input.mark(length);
+        final byte[] header = new byte[length];
+        final int read = readFully(input, header, 0, length);
+        input.reset();
+        return read == length ? header : Arrays.copyOf(header, read);
+    }
+
+    /**
+     * @return the number of bytes read - less than len only at the end of the stream
+     */
+    private static int readFully(final InputStream input, final byte[] b, final int off, final int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            final int read = input.read(b, off + total, len - total);
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static int readIntLE(final byte[] b, final int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * A gzip member whose only extra subfield is the BGZF 'BC' block size - as written by bgzip
+     */
+    static boolean isBgzf(final byte[] header, final int length) {
+        return length >= BGZF_HEADER && (header[0] & 0xFF) == 0x1f && (header[1] & 0xFF) == 0x8b && header[2] == 8 && header[3] == 4
+                && ((header[10] & 0xFF) | (header[11] & 0xFF) << 8) >= 6 && header[12] == 'B' && header[13] == 'C'
+                && header[14] == 2 && header[15] == 0;
+    }
+
+    static boolean isIndependentLz4(final byte[] header) {
+        return header.length >= 5 && readIntLE(header, 0) == LZ4_MAGIC && (header[4] & 0x20) != 0;
+    }
+
+    private static class Piece {
+        private final byte[] data;
+        private final int length;
+
+        private Piece(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private interface Pieces {
+        /**
+         * @return the work to decompress the next piece, or null at the end of the file
+         */
+        Callable<Piece> next() throws IOException;
+
+        /**
+         * The piece has been read - its buffer can be reused
+         */
+        default void release(Piece piece) {
+        }
+
+        void close() throws IOException;
+    }
+
+    private static class GzipMembers implements Pieces {
+        private final InputStream input;
+
+        private GzipMembers(final InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public Callable<Piece> next() throws IOException {
+            final byte[] header = new byte[BGZF_HEADER];
+            final int read = readFully(input, header, 0, BGZF_HEADER);
+            if (read == 0) return null;
+            if (!isBgzf(header, read)) throw new IOException("gzip member without a BC block size");
+
+            final int blockSize = ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+            final byte[] member = Arrays.copyOf(header, blockSize);
+            if (readFully(input, member, BGZF_HEADER, blockSize - BGZF_HEADER) != blockSize - BGZF_HEADER) {
+                throw new EOFException("Unexpected end of gzip data");
+            }
+            final int dataStart = 12 + ((header[10] & 0xFF) | (header[11] & 0xFF) << 8);
+            return () -> inflate(member, dataStart, blockSize - 8);
+        }
+
+        private static Piece inflate(final byte[] member, final int from, final int to) throws IOException {
+            // ISIZE - a BGZF member holds at most 64KB
+            final int size = readIntLE(member, to + 4);
+            if (size < 0 || size > BGZF_MAX_SIZE) throw new IOException("Invalid gzip member size:" + size);
+            final byte[] data = new byte[size];
+            final Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(member, from, to - from);
+                int inflated = 0;
+                while (inflated < size) {
+                    final int read = inflater.inflate(data, inflated, size - inflated);
+                    if (read == 0 && (inflater.finished() || inflater.needsInput())) break;
+                    inflated += read;
+                }
+                if (inflated != size) throw new IOException("Corrupt gzip member");
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt gzip member", e);
+            } finally {
+                inflater.end();
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, size);
+            if ((int) crc.getValue() != readIntLE(member, to)) throw new IOException("gzip member CRC mismatch");
+            return new Piece(data, size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Blocks of (possibly concatenated) LZ4 frames. Block checksums are checked, the content checksum is skipped
+     */
+    private static class Lz4Blocks implements Pieces {
+        private static final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+        private static final XXHash32 hash = XXHashFactory.fastestInstance().hash32();
+
+        private final InputStream input;
+        private final byte[] word = new byte[4];
+        // decompressed blocks are up to 4MB - their buffers are reused once read (at most readAhead + 1 are in use)
+        private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+        private boolean inFrame;
+        private boolean blockChecksum;
+        private boolean contentChecksum;
+        private int maxBlockSize;
+
+        private Lz4Blocks(final InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public Callable<Piece> next() throws IOException {
+            while (!inFrame) {
+                if (!frameHeader()) return null;
+            }
+            final int blockWord = readInt();
+            if (blockWord == 0) {
+                if (contentChecksum) readInt();
+                inFrame = false;
+                return next();
+            }
+            final boolean stored = (blockWord & 0x80000000) != 0;
+            final int size = blockWord & 0x7FFFFFFF;
+            if (size > maxBlockSize) throw new IOException("LZ4 block larger than the frame maximum:" + size);
+            final byte[] block = new byte[size];
+            if (readFully(input, block, 0, size) != size) throw new EOFException("Unexpected end of LZ4 data");
+            final boolean checked = blockChecksum;
+            final int checksum = checked ? readInt() : 0;
+            final int max = maxBlockSize;
+
+            return () -> {
+                if (checked && hash.hash(block, 0, size, 0) != checksum) throw new IOException("LZ4 block checksum mismatch");
+                if (stored) return new Piece(block, size);
+                final byte[] data = buffer(max);
+                return new Piece(data, decompressor.decompress(block, 0, size, data, 0, max));
+            };
+        }
+
+        private byte[] buffer(final int size) {
+            final byte[] buffer = buffers.poll();
+            return buffer != null && buffer.length >= size ? buffer : new byte[size];
+        }
+
+        @Override
+        public void release(final Piece piece) {
+            // stored blocks are handed back as read - only full size buffers are worth keeping
+            if (piece.data.length == maxBlockSize) buffers.offer(piece.data);
+        }
+
+        /**
+         * @return false at the end of the data
+         */
+        private boolean frameHeader() throws IOException {
+            final int read = readFully(input, word, 0, 4);
+            if (read == 0) return false;
+            if (read != 4) throw new EOFException("Unexpected end of LZ4 data");
+            final int magic = readIntLE(word, 0);
+            if ((magic & 0xFFFFFFF0) == 0x184D2A50) {
+                // skippable frame
+                long skip = readInt() & 0xFFFFFFFFL;
+                while (skip > 0) {
+                    final long skipped = input.skip(skip);
+                    if (skipped <= 0) throw new EOFException("Unexpected end of LZ4 data");
+                    skip -= skipped;
+                }
+                return true;
+            }
+            if (magic != LZ4_MAGIC) throw new IOException("Not an LZ4 frame");
+
+            final int flags = input.read();
+            final int blockDescriptor = input.read();
+            if (flags == -1 || blockDescriptor == -1) throw new EOFException("Unexpected end of LZ4 data");
+            if ((flags >>> 6) != 1) throw new IOException("Unsupported LZ4 frame version");
+            if ((flags & 0x20) == 0) throw new IOException("LZ4 frame with dependent blocks");
+            if ((flags & 0x01) != 0) throw new IOException("LZ4 frame with a dictionary");
+            final int blockSizeId = (blockDescriptor >>> 4) & 7;
+            if (blockSizeId < 4) throw new IOException("Invalid LZ4 block size");
+            maxBlockSize = 1 << (8 + 2 * blockSizeId);
+            blockChecksum = (flags & 0x10) != 0;
+            contentChecksum = (flags & 0x04) != 0;
+
+            // content size and the header checksum
+            final int skip = ((flags & 0x08) != 0 ? 8 : 0) + 1;
+            if (readFully(input, new byte[skip], 0, skip) != skip) throw new EOFException("Unexpected end of LZ4 data");
+            inFrame = true;
+            return true;
+        }
+
+        private int readInt() throws IOException {
+            if (readFully(input, word, 0, 4) != 4) throw new EOFException("Unexpected end of LZ4 data");
+            return readIntLE(word, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
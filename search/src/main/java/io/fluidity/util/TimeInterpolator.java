@@ -0,0 +1,87 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+/**
+ * Estimates times for lines that dont carry a timestamp - from their byte position between the last known time (the
+ * anchor) and the end of the file. Each parsed timestamp re-anchors the estimate so errors dont accumulate line by line.
+ * <p>
+ * Recent line lengths are kept in a primitive ring buffer with a running sum, so the average line length is O(1) to
+ * maintain - it is used to clamp estimates at the end of the file and when the file length is a poor guess.
+ */
+public class TimeInterpolator {
+    static final int WINDOW = 100;
+    private static final int DEFAULT_LINE_LENGTH = 100;
+    // presume ~100x compression when the uncompressed length isnt known
+    private static final int COMPRESSION_RATIO = 100;
+
+    private final long toTime;
+    private final long fileLength;
+
+    private final int[] lengths = new int[WINDOW];
+    private int count;
+    private int next;
+    private long lengthSum;
+
+    private long anchorTime;
+    private long anchorPosition;
+    private double millisPerByte;
+
+    public TimeInterpolator(final boolean isCompressed, final long fromTime, final long toTime, final long fileLength) {
+        this.toTime = toTime;
+        this.fileLength = isCompressed ? fileLength * COMPRESSION_RATIO : fileLength;
+        // the file time-span is unreliable (missing or very old) - presume an hour
+        anchor(fromTime == 0 || fromTime < toTime - DateUtil.DAY * 30 ? toTime - DateUtil.HOUR : fromTime, 0);
+    }
+
+    public void addLine(final int lineLength) {
+        if (count == WINDOW) {
+            lengthSum -= lengths[next];
+        } else {
+            count++;
+        }
+        lengths[next] = lineLength;
+        lengthSum += lineLength;
+        next = (next + 1) % WINDOW;
+    }
+
+    /**
+     * A real timestamp was found at position
+     */
+    public void anchor(final long time, final long position) {
+        anchorTime = time;
+        anchorPosition = position;
+        long remaining = fileLength - position;
+        if (remaining < averageLineLength()) {
+            // past the (guessed) end of the file - spread what is left over the next 1024 lines
+            remaining = averageLineLength() * 1024L;
+        }
+        millisPerByte = Math.max(0, toTime - time) / (double) remaining;
+    }
+
+    /**
+     * Positions past the end of the file (i.e. the length was underestimated) stay at the time of the last line - which
+     * starts about one line before the end
+     */
+    public long estimate(final long position) {
+        final long clamped = Math.min(position, Math.max(fileLength - averageLineLength(), anchorPosition));
+        return anchorTime + (long) (Math.max(0, clamped - anchorPosition) * millisPerByte);
+    }
+
+    int averageLineLength() {
+        final int average = count == 0 ? 0 : (int) (lengthSum / count);
+        return average == 0 ? DEFAULT_LINE_LENGTH : average;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Sparse time -> byte offset index of an (uncompressed) file, stored as a sidecar next to it. An entry is taken at the
+ * first line with a parseable time after every 'interval' bytes, so a scan can seek to the block that overlaps the search
+ * window rather than starting from byte 0 and guessing.
+ * <p>
+ * Format: int version, int count, count * [long time, long offset]
+ */
+public class TimeOffsetIndex {
+    public static final String SUFFIX = ".tidx";
+    public static final long DEFAULT_INTERVAL = 4 * 1024 * 1024;
+    private static final int VERSION = 1;
+
+    private long[] times;
+    private long[] offsets;
+    private int size;
+
+    public TimeOffsetIndex() {
+        this(new long[16], new long[16], 0);
+    }
+
+    private TimeOffsetIndex(long[] times, long[] offsets, int size) {
+        this.times = times;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    public static TimeOffsetIndex build(final InputStream input, final String timeFormat, final long interval) throws IOException {
+        final TimeOffsetIndex index = new TimeOffsetIndex();
+        final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor(timeFormat);
+        long nextMark = 0;
+        try (LineScanner scanner = new LineScanner(input)) {
+            while (scanner.next()) {
+                if (scanner.position() < nextMark) continue;
+                final long time = dateTimeExtractor.getTime(scanner.lineAsString());
+                if (time != DateTimeExtractor.NO_TIME) {
+                    index.add(time, scanner.position());
+                    nextMark = scanner.position() + interval;
+                }
+            }
+        }
+        return index;
+    }
+
+    public void add(final long time, final long offset) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        times[size] = time;
+        offsets[size] = offset;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the bytes to scan for [from, to) - from the last entry at or before 'from', up to the first entry at or after 'to'.
+     * The times at each end are returned so the caller can keep estimating time for lines without one.
+     */
+    public Range seek(final long from, final long to, final long fileLength, final long fileFromTime, final long fileToTime) {
+        int start = -1;
+        while (start + 1 < size && times[start + 1] <= from) start++;
+        int end = Math.max(start + 1, 0);
+        while (end < size && times[end] < to) end++;
+
+        return new Range(start < 0 ? 0 : offsets[start], end < size ? offsets[end] : fileLength,
+                start < 0 ? fileFromTime : times[start], end < size ? times[end] : fileToTime);
+    }
+
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(VERSION);
+        dos.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            dos.writeLong(times[i]);
+            dos.writeLong(offsets[i]);
+        }
+        dos.flush();
+    }
+
+    public static TimeOffsetIndex read(final InputStream in) throws IOException {
+        final DataInputStream dis = new DataInputStream(in);
+        final int version = dis.readInt();
+        if (version != VERSION) throw new IOException("Unsupported time index version:" + version);
+        final int count = dis.readInt();
+        final long[] times = new long[Math.max(count, 1)];
+        final long[] offsets = new long[Math.max(count, 1)];
+        for (int i = 0; i < count; i++) {
+            times[i] = dis.readLong();
+            offsets[i] = dis.readLong();
+        }
+        return new TimeOffsetIndex(times, offsets, count);
+    }
+
+    public static class Range {
+        public final long startOffset;
+        public final long endOffset;
+        public final long fromTime;
+        public final long toTime;
+
+        Range(long startOffset, long endOffset, long fromTime, long toTime) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+        }
+
+        public long length() {
+            return endOffset - startOffset;
+        }
+    }
+}
@@ -4,7 +4,10 @@ import io.fluidity.search.field.extractor.FieldExtractor;
 import org.graalvm.collections.Pair;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class FieldExtractorTest {
     @Test
@@ -35,4 +38,18 @@ class FieldExtractorTest {
         Pair<String, Long> keyValue = extractor.getSeriesNameAndValue("someFile", "84092300524:235:648701410117:166:1584091742979 INFO CPU:5");
         assertEquals(Pair.create("CPU:", 5l), keyValue);
     }
-}
\ No newline at end of file
+
+    @Test
+    void extractsAListOfFields() {
+        FieldExtractor extractor = new FieldExtractor("*|*|*|field.getKVPair(CPU:), field.getJsonPair(user) field.getJsonPair(latency), field.getKVPair(MEM:)");
+        List<Pair<String, Long>> keyValues = extractor.getSeriesNamesAndValues("someFile", "INFO CPU:5 {\"user\":\"99kerob\",\"latency\":120}");
+        assertEquals(4, keyValues.size());
+        assertEquals(Pair.create("CPU:", 5l), keyValues.get(0));
+        assertEquals(Pair.create("99kerob", 1l), keyValues.get(1));
+        assertEquals(Pair.create("latency", 120l), keyValues.get(2));
+        assertNull(keyValues.get(3));
+        assertEquals(Pair.create("CPU:", 5l), extractor.getSeriesNameAndValue("someFile", "INFO CPU:5"));
+        assertEquals("CPU", extractor.getFieldName(0));
+        assertEquals("latency", extractor.getFieldName(2));
+    }
+}
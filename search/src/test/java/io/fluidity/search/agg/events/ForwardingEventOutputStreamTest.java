@@ -0,0 +1,41 @@
+package io.fluidity.search.agg.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ForwardingEventOutputStreamTest {
+
+    @Test
+    public void testLinesAreForwardedWhenComplete() throws Exception {
+        List<String> events = new ArrayList<>();
+        ForwardingEventOutputStream outputStream = new ForwardingEventOutputStream(events::add);
+
+        outputStream.write("100:0:first line\n100:17:sec".getBytes());
+        assertEquals(1, events.size());
+        outputStream.write("ond line\n".getBytes());
+        outputStream.write('2');
+        outputStream.write('\n');
+
+        assertEquals(3, events.size());
+        assertEquals("100:0:first line", events.get(0));
+        assertEquals("100:17:second line", events.get(1));
+        assertEquals("2", events.get(2));
+    }
+
+    @Test
+    public void testWritesAreDroppedOnceNotAccepting() throws Exception {
+        List<String> events = new ArrayList<>();
+        ForwardingEventOutputStream outputStream = new ForwardingEventOutputStream(events::add, () -> events.size() < 1);
+
+        outputStream.write("100:0:first line\n".getBytes());
+        outputStream.write("100:17:second line\n".getBytes());
+        outputStream.write('\n');
+
+        assertEquals(1, events.size());
+        assertEquals("100:0:first line", events.get(0));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.events;
+
+import io.fluidity.util.TimeOffsetIndex;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IndexedEventOutputStreamTest {
+
+    @Test
+    void indexesLineStartsEveryInterval() throws Exception {
+        ByteArrayOutputStream staged = new ByteArrayOutputStream();
+        AtomicReference<TimeOffsetIndex> index = new AtomicReference<>();
+        IndexedEventOutputStream outputStream = new IndexedEventOutputStream(staged, 40, index::set);
+        for (int i = 0; i < 10; i++) {
+            // 20 bytes per line, written in pieces
+            outputStream.write(String.format("%d:", 10000 + i * 1000).getBytes());
+            outputStream.write(String.format("%05d:line-%02d\n", i * 20, i).getBytes());
+        }
+        outputStream.close();
+
+        String content = new String(staged.toByteArray());
+        assertEquals(200, content.length());
+        // an entry every other line
+        assertEquals(5, index.get().size());
+        TimeOffsetIndex.Range range = index.get().seek(14500, Long.MAX_VALUE, content.length(), 0, 0);
+        assertEquals(80, range.startOffset);
+        assertEquals(14000, range.fromTime);
+        assertEquals("14000", content.substring((int) range.startOffset, (int) range.startOffset + 5));
+    }
+
+    @Test
+    void smallOutputHasNoIndex() throws Exception {
+        AtomicReference<TimeOffsetIndex> index = new AtomicReference<>();
+        IndexedEventOutputStream outputStream = new IndexedEventOutputStream(new ByteArrayOutputStream(), IndexedEventOutputStream.DEFAULT_INTERVAL, index::set);
+        outputStream.write("1000:0:some line\n".getBytes());
+        outputStream.close();
+        assertNull(index.get());
+    }
+}
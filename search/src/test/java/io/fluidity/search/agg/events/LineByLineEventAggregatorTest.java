@@ -19,7 +19,9 @@ import io.fluidity.search.StorageInputStream;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -87,6 +89,52 @@ class LineByLineEventAggregatorTest {
         assertFalse(eventsData.contains("file2.txt,1"), "Should have 1 line");
     }
 
+    @Test
+    void mergesInTimeOrderUpToLimit() throws Exception {
+
+        Map<String, StorageInputStream> streams = new HashMap<>();
+        streams.put("odd", createInputStream("1000:odd-1\n3000:odd-3\n5000:odd-5\n"));
+        streams.put("even", createInputStream("2000:even-2\n4000:even-4\n6000:even-6\n"));
+        LineByLineEventAggregator aggregator = new LineByLineEventAggregator(streams, null);
+        String[] processed = aggregator.process(0, 4);
+
+        assertEquals(4, Integer.parseInt(processed[0]));
+        String[] events = processed[1].split("\n");
+        assertEquals(4, events.length);
+        for (int i = 0; i < events.length; i++) {
+            assertTrue(events[i].endsWith("-" + (i + 1)), events[i]);
+        }
+    }
+
+    @Test
+    void resumesFromCursor() throws Exception {
+
+        String odd = "1000:odd-1\n3000:odd-3\n5000:odd-5\n";
+        String even = "2000:even-2\n4000:even-4\n6000:even-6\n";
+        Map<String, StorageInputStream> streams = new LinkedHashMap<>();
+        streams.put("odd", createInputStream(odd));
+        streams.put("even", createInputStream(even));
+        String[] firstPage = new LineByLineEventAggregator(streams, null).process(0, 3);
+
+        LinkedHashMap<String, Long> cursor = EventsCursor.decode(firstPage[3]);
+        assertEquals(asList("odd", "even"), new ArrayList<>(cursor.keySet()));
+        assertEquals(odd.indexOf("5000"), cursor.get("odd").intValue());
+        assertEquals(even.indexOf("4000"), cursor.get("even").intValue());
+
+        // only the unread part of each stream is opened for the next page
+        Map<String, StorageInputStream> resumed = new LinkedHashMap<>();
+        cursor.forEach((name, offset) -> resumed.put(name, createInputStream((name.equals("odd") ? odd : even).substring(offset.intValue()))));
+        String[] secondPage = new LineByLineEventAggregator(resumed, cursor, null).process(0, 2);
+
+        String[] events = secondPage[1].split("\n");
+        assertEquals(2, events.length);
+        assertTrue(events[0].endsWith("even-4"), events[0]);
+        assertTrue(events[1].endsWith("odd-5"), events[1]);
+        assertEquals(even.indexOf("6000"), EventsCursor.decode(secondPage[3]).get("even").intValue());
+        // odd-5 was the last line returned - its stream is not read again to find it is exhausted
+        assertEquals(odd.length(), EventsCursor.decode(secondPage[3]).get("odd").intValue());
+    }
+
     private Map<String, StorageInputStream> createSteams(List<String> filenames, int limit) throws Exception {
 
         HashMap<String, StorageInputStream> results = new HashMap<>();
@@ -108,4 +156,9 @@ class LineByLineEventAggregatorTest {
         ByteArrayInputStream inputStream = new ByteArrayInputStream(sb.toString().getBytes());
         return new StorageInputStream(filename, System.currentTimeMillis(), inputStream.available(), inputStream);
     }
-}
\ No newline at end of file
+
+    private StorageInputStream createInputStream(String content) {
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(content.getBytes());
+        return new StorageInputStream("test", System.currentTimeMillis(), inputStream.available(), inputStream);
+    }
+}
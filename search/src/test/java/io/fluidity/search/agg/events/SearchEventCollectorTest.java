@@ -24,6 +24,7 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SearchEventCollectorTest {
@@ -72,6 +73,55 @@ class SearchEventCollectorTest {
         System.out.println(outFileContents);
     }
 
+    @Test
+    public void testMatchedRecordsAreStaged() throws Exception {
+
+        StringBuilder fileContentAsString = makeFileContent();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        SearchEventCollector simpleSearchProcessor = new SearchEventCollector(new NoopHistoCollector(),
+                new ByteArrayInputStream(fileContentAsString.toString().getBytes()), baos);
+        Search search = new Search();
+        search.expression = "* | * | ERROR | * | * | *";
+        search.from = 0l;
+        search.to = System.currentTimeMillis();
+
+        Integer[] process = simpleSearchProcessor.process(false, search, 0, System.currentTimeMillis(), fileContentAsString.length(), "");
+        assertEquals(90, process[1].intValue(), "should have scanned every line");
+
+        String[] staged = new String(baos.toByteArray()).split("\n");
+        assertEquals(45, staged.length, "should have staged the ERROR lines only");
+
+        // timestamp:filepos:data - where filepos is the offset into the staged output
+        long expectedPos = 0;
+        for (String record : staged) {
+            String[] parts = record.split(":", 3);
+            assertEquals(expectedPos, Long.parseLong(parts[1]));
+            assertTrue(parts[2].contains("ERROR"));
+            expectedPos += record.length() + 1;
+        }
+    }
+
+    @Test
+    public void testScanStopsWhenProgressSaysSo() throws Exception {
+        StringBuilder fileContentAsString = new StringBuilder();
+        for (int i = 0; i < SearchEventCollector.PROGRESS_LINES * 4; i++) {
+            fileContentAsString.append("line ").append(i).append('\n');
+        }
+        int[] calls = new int[1];
+        SearchEventCollector simpleSearchProcessor = new SearchEventCollector(new NoopHistoCollector(),
+                new ByteArrayInputStream(fileContentAsString.toString().getBytes()), new ByteArrayOutputStream())
+                .withProgress(() -> ++calls[0] < 2);
+        Search search = new Search();
+        search.expression = "*";
+        search.from = 0l;
+        search.to = System.currentTimeMillis();
+
+        Integer[] process = simpleSearchProcessor.process(false, search, 0, System.currentTimeMillis(), fileContentAsString.length(), "");
+        assertEquals(2, calls[0]);
+        assertEquals(SearchEventCollector.PROGRESS_LINES * 2, process[1].intValue());
+    }
+
     private StringBuilder makeFileContent() {
         DateTimeFormatter dateTimeFormatter = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm.SS");
         StringBuilder fileContentAsString = new StringBuilder();
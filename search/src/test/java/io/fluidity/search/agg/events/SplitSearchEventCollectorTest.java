@@ -0,0 +1,180 @@
+package io.fluidity.search.agg.events;
+
+import io.fluidity.search.Search;
+import io.fluidity.search.agg.histo.NoopHistoCollector;
+import io.fluidity.util.DateUtil;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SplitSearchEventCollectorTest {
+
+    @Test
+    public void testSplitScanMatchesSingleScan() throws Exception {
+        byte[] content = makeFileContent().getBytes();
+        String timeFormat = "yyyy-MM-dd HH:mm.SS";
+
+        Search search = new Search();
+        search.expression = "* | * | ERROR | * | * | *";
+        search.from = 0l;
+        search.to = System.currentTimeMillis();
+
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        Integer[] singleCounts = new SearchEventCollector(new NoopHistoCollector(), new ByteArrayInputStream(content), single)
+                .process(false, search, 0, System.currentTimeMillis(), content.length, timeFormat);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ByteArrayOutputStream split = new ByteArrayOutputStream();
+            SplitSearchEventCollector collector = new SplitSearchEventCollector(new NoopHistoCollector(), offset -> {
+                ByteArrayInputStream inputStream = new ByteArrayInputStream(content);
+                inputStream.skip(offset);
+                return inputStream;
+            }, split, executor, 7);
+
+            assertEquals(7, collector.split(content.length).length - 1);
+
+            Integer[] splitCounts = collector.process(false, search, 0, System.currentTimeMillis(), content.length, timeFormat);
+            assertEquals(singleCounts[0], splitCounts[0]);
+            assertEquals(singleCounts[1], splitCounts[1]);
+            assertEquals(new String(single.toByteArray()), new String(split.toByteArray()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testScanSelectedRanges() throws Exception {
+        String content = makeFileContent();
+        byte[] bytes = content.getBytes();
+        // the 2nd and 4th lines
+        int line2 = content.indexOf('\n') + 1;
+        int line3 = content.indexOf('\n', line2) + 1;
+        int line4 = content.indexOf('\n', line3) + 1;
+        int line5 = content.indexOf('\n', line4) + 1;
+
+        Search search = new Search();
+        search.expression = "* | * | CPU | * | * | *";
+        search.from = 0l;
+        search.to = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Integer[] counts = new SplitSearchEventCollector(new NoopHistoCollector(), offset -> {
+                ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+                inputStream.skip(offset);
+                return inputStream;
+            }, out, executor, new long[][]{{line2, line3}, {line4, line5}})
+                    .process(false, search, 0, System.currentTimeMillis(), bytes.length, "yyyy-MM-dd HH:mm.SS");
+
+            assertEquals(2, counts[1].intValue());
+            String[] events = new String(out.toByteArray()).split("\n");
+            assertEquals(2, events.length);
+            assertTrue(events[0].endsWith("CPU:1"));
+            assertTrue(events[1].endsWith("CPU:3"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRangeTimesAreUsedForLinesWithoutTimes() throws Exception {
+        byte[] bytes = "no time here\nnor here\n".getBytes();
+        long rangeFrom = 1592215200000l;
+
+        Search search = new Search();
+        search.expression = "*";
+        search.from = 0l;
+        search.to = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new SplitSearchEventCollector(new NoopHistoCollector(), offset -> {
+                ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+                inputStream.skip(offset);
+                return inputStream;
+            }, out, executor, new long[][]{{0, bytes.length, rangeFrom, rangeFrom + 1000}})
+                    .process(false, search, 0, System.currentTimeMillis(), bytes.length, "yyyy-MM-dd HH:mm:ss");
+
+            String[] events = new String(out.toByteArray()).split("\n");
+            assertEquals(2, events.length);
+            for (String event : events) {
+                long time = Long.parseLong(event.substring(0, event.indexOf(':')));
+                assertTrue(time >= rangeFrom && time <= rangeFrom + 1000, event);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRangeLeavesNoTempFiles() throws Exception {
+        byte[] content = makeFileContent().getBytes();
+        Search search = new Search();
+        search.expression = "* | * | ERROR | * | * | *";
+        search.from = 0l;
+        search.to = System.currentTimeMillis();
+
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        FilenameFilter staged = (dir, name) -> name.startsWith("fluidity-split-");
+        int before = tmp.list(staged).length;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SplitSearchEventCollector collector = new SplitSearchEventCollector(new NoopHistoCollector(), offset -> {
+                // the first range fails - the second carries on (ignoring the cancel) after the scan has given up
+                if (offset == 0) throw new IOException("failed:" + offset);
+                pauseUninterruptibly(200);
+                ByteArrayInputStream inputStream = new ByteArrayInputStream(content);
+                inputStream.skip(offset);
+                return inputStream;
+            }, new ByteArrayOutputStream(), executor, new long[][]{{0, content.length / 2}, {content.length / 2, content.length}});
+            assertThrows(IOException.class, () -> collector.process(false, search, 0, System.currentTimeMillis(), content.length, "yyyy-MM-dd HH:mm.SS"));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(before, tmp.list(staged).length);
+    }
+
+    private void pauseUninterruptibly(long millis) {
+        long until = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < until) {
+            try {
+                Thread.sleep(until - System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                // carry on
+            }
+        }
+        Thread.interrupted();
+    }
+
+    private String makeFileContent() {
+        DateTimeFormatter dateTimeFormatter = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm.SS");
+        StringBuilder fileContentAsString = new StringBuilder();
+
+        long time = System.currentTimeMillis() - DateUtil.HOUR;
+
+        for (int i = 0; i < 1000; i++) {
+            fileContentAsString.append(String.format("%s %s CPU:%d", dateTimeFormatter.print(time), i % 3 == 0 ? "ERROR" : "INFO", i));
+            fileContentAsString.append('\n');
+            time += 1000;
+        }
+        return fileContentAsString.toString();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import io.fluidity.search.Search;
+import io.fluidity.search.StorageInputStream;
+import io.fluidity.util.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountDistinctHistoAggregatorTest {
+
+    @Test
+    void valuesInManyFilesAreCountedOnce() throws Exception {
+        Search search = new Search();
+        search.expression = "*|*|*|field.getKVPair(user:)|analytic.countDistinct()|*";
+        long to = System.currentTimeMillis();
+        long from = to - 5 * DateUtil.MINUTE;
+        search.from = from;
+        search.to = to;
+
+        // 0..99 and 50..149 - 150 distinct
+        Map<String, StorageInputStream> inputStreams = new HashMap<>();
+        generatePartial(search, inputStreams, from, to, "file1", 0, 100);
+        generatePartial(search, inputStreams, from, to, "file2", 50, 150);
+
+        CountDistinctHistoAggregator aggregator = new CountDistinctHistoAggregator(inputStreams, search);
+        List<Series<Long>> collected = new ArrayList<>();
+        for (StorageInputStream partial : inputStreams.values()) {
+            collected.addAll(HistoBinaryFormat.read(partial.inputStream));
+        }
+        List<Series<Long>> results = aggregator.processSeries(collected);
+
+        assertEquals(1, results.size());
+        assertEquals("distinct", results.get(0).name());
+        long distinct = results.get(0).get(from);
+        assertTrue(Math.abs(distinct - 150) <= 5, "distinct:" + distinct);
+    }
+
+    private void generatePartial(Search search, Map<String, StorageInputStream> inputStreams, long from, long to, String file, int first, int last) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SimpleHistoCollector histoCollector = new SimpleHistoCollector(baos, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        histoCollector.updateFileInfo(file, "");
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (int i = first; i < last; i++) {
+                histoCollector.add(from, i, "user:" + i);
+            }
+        }
+        histoCollector.close();
+        inputStreams.put(file, new StorageInputStream(file, System.currentTimeMillis(), baos.size(), new ByteArrayInputStream(baos.toByteArray())));
+    }
+}
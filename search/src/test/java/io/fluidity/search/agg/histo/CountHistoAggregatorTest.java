@@ -85,7 +85,32 @@ class CountHistoAggregatorTest {
         System.out.printf("Got: \n%s", histogram);
     }
 
+    @Test
+    void processManyPartials() throws Exception {
+
+        Search search = new Search();
+        search.expression = "*|*|*|*|*|*";
+        Map<String, StorageInputStream> inputStreams = new HashMap<>();
+
+        long to = System.currentTimeMillis();
+        long from = to - 5 * DateUtil.MINUTE;
+        search.from = from;
+        search.to = to;
+
+        // same series in every partial - they are reduced in parallel and must all be counted
+        for (int i = 0; i < 200; i++) {
+            generateSeriesData(search, inputStreams, to, from, "someFile", "partial" + i);
+        }
+
+        String histogram = new CountHistoAggregator(inputStreams, search).process();
+        assertTrue(histogram.contains(",200]"), histogram);
+    }
+
     private void generateSeriesData(Search search, Map<String, StorageInputStream> inputStreams, long to, long from, String seriesName) throws Exception {
+        generateSeriesData(search, inputStreams, to, from, seriesName, seriesName);
+    }
+
+    private void generateSeriesData(Search search, Map<String, StorageInputStream> inputStreams, long to, long from, String seriesName, String partialName) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         SimpleHistoCollector histoCollector = new SimpleHistoCollector(baos, search, from, to, HistoAggFactory.Count);
         histoCollector.updateFileInfo(seriesName, "tag-value");
@@ -93,7 +118,7 @@ class CountHistoAggregatorTest {
         histoCollector.close();
 
         ByteArrayInputStream inputStream = new ByteArrayInputStream(baos.toByteArray());
-        inputStreams.put(seriesName, new StorageInputStream(seriesName, System.currentTimeMillis(), baos.size(), inputStream));
+        inputStreams.put(partialName, new StorageInputStream(partialName, System.currentTimeMillis(), baos.size(), inputStream));
 
     }
 }
\ No newline at end of file
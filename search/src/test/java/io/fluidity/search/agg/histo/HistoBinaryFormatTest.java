@@ -0,0 +1,88 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import io.fluidity.util.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoBinaryFormatTest {
+
+    @Test
+    void roundTrip() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        LongTimeSeries series = new LongTimeSeries("tags-someFile", "tags", from, to);
+        series.update(from, 100L);
+        series.update(from + DateUtil.MINUTE * 10, -5L);
+        series.update(to, Long.MAX_VALUE);
+        LongTimeSeries empty = new LongTimeSeries("empty", "", from, to);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HistoBinaryFormat.write(Arrays.asList(series, empty), baos);
+
+        InputStream inputStream = HistoBinaryFormat.markable(new ByteArrayInputStream(baos.toByteArray()));
+        assertTrue(HistoBinaryFormat.isBinary(inputStream));
+        List<Series<Long>> read = HistoBinaryFormat.read(inputStream);
+
+        assertEquals(2, read.size());
+        LongTimeSeries copy = (LongTimeSeries) read.get(0);
+        assertEquals("tags-someFile", copy.name());
+        assertEquals("tags", copy.groupBy());
+        assertEquals(series.data(), copy.data());
+        assertEquals(100L, copy.get(from).longValue());
+        assertEquals(-5L, copy.get(from + DateUtil.MINUTE * 10).longValue());
+        assertNull(copy.get(from + DateUtil.MINUTE * 20));
+        assertFalse(read.get(1).hasData());
+        assertEquals(series.size(), ((LongTimeSeries) read.get(1)).size());
+    }
+
+    @Test
+    void distinctSketchesRoundTrip() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        DistinctTimeSeries series = new DistinctTimeSeries("users", "", from, to);
+        for (long i = 0; i < 500; i++) {
+            series.update(from, i % 100);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HistoBinaryFormat.write(Arrays.asList(series), baos);
+        List<Series<Long>> read = HistoBinaryFormat.read(new ByteArrayInputStream(baos.toByteArray()));
+
+        assertTrue(read.get(0) instanceof DistinctTimeSeries);
+        assertEquals(series.get(from), read.get(0).get(from));
+        assertNull(read.get(0).get(to));
+    }
+
+    @Test
+    void jsonIsNotBinary() throws Exception {
+        InputStream inputStream = HistoBinaryFormat.markable(new ByteArrayInputStream("[{\"name\":\"x\"}]".getBytes()));
+        assertFalse(HistoBinaryFormat.isBinary(inputStream));
+        // nothing consumed
+        assertEquals('[', inputStream.read());
+    }
+}
@@ -0,0 +1,76 @@
+package io.fluidity.search.agg.histo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fluidity.util.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongTimeSeriesTest {
+
+    @Test
+    public void testSameBucketsAsTimeSeries() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.DAY * 3;
+        Series<Long> expected = new TimeSeries<>("someFile", "", from, to, new Series.LongOps());
+        LongTimeSeries series = new LongTimeSeries("someFile", "", from, to);
+
+        assertEquals(expected.start(), series.start());
+        assertEquals(expected.end(), series.end());
+        assertEquals(expected.data().size(), series.size());
+        assertFalse(series.hasData());
+
+        series.update(from + DateUtil.HOUR, 0L);
+        assertTrue(series.hasData());
+        assertEquals(0L, series.get(from + DateUtil.HOUR));
+        assertNull(series.get(from + DateUtil.HOUR * 2));
+        assertNull(series.get(to + DateUtil.DAY));
+    }
+
+    @Test
+    public void testMergeAndJson() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        LongTimeSeries series = new LongTimeSeries("someFile", "", from, to);
+        LongTimeSeries other = new LongTimeSeries("someFile", "", from, to);
+        series.update(from, 10L);
+        other.update(from, 5L);
+        other.update(to, 7L);
+
+        series.merge(other);
+        assertEquals(15L, series.get(from));
+        assertEquals(7L, series.get(to));
+        // as TimeSeries - a bucket that is empty on both sides is 0 once merged
+        assertEquals(0L, series.get(from + DateUtil.MINUTE * 30));
+
+        Series<Long> timeSeries = new TimeSeries<>("someFile", "", from, to, new Series.LongOps());
+        timeSeries.update(from, 1L);
+        series.merge(timeSeries);
+        assertEquals(16L, series.get(from));
+
+        String json = new ObjectMapper().writeValueAsString(series);
+        assertTrue(json.contains("\"name\":\"someFile\""), json);
+        assertTrue(json.contains("\"right\":16"), json);
+    }
+
+    @Test
+    public void testMergeMatchesTimeSeries() {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.DAY * 3;
+        Series<Long> expected = new TimeSeries<>("someFile", "", from, to, new Series.LongOps());
+        Series<Long> expectedOther = new TimeSeries<>("someFile", "", from, to, new Series.LongOps());
+        LongTimeSeries series = new LongTimeSeries("someFile", "", from, to);
+        LongTimeSeries other = new LongTimeSeries("someFile", "", from, to);
+        expected.update(from, 3L);
+        series.update(from, 3L);
+        expectedOther.update(to, 4L);
+        other.update(to, 4L);
+
+        expected.merge(expectedOther);
+        series.merge(other);
+        assertEquals(expected.data().toString(), series.data().toString());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.search.agg.histo;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fluidity.search.Search;
+import io.fluidity.search.StorageInputStream;
+import io.fluidity.util.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PercentilesHistoAggregatorTest {
+
+    @Test
+    void binsAreWithinThreePercent() {
+        for (long value = 1; value < 10_000_000L; value = value * 3 + 1) {
+            int bin = QuantileBins.bin(value);
+            assertTrue(QuantileBins.lowerBound(bin) <= value);
+            assertTrue(value < QuantileBins.lowerBound(bin + 1));
+            assertTrue(Math.abs(QuantileBins.value(bin) - value) <= value * 0.03, "value:" + value);
+        }
+        assertEquals(0, QuantileBins.bin(-10));
+    }
+
+    @Test
+    void parsesPercentiles() {
+        assertEquals("[50.0, 99.9]", Arrays.toString(PercentilesHistoAggregator.percentiles("analytic.percentiles(50, 99.9)")));
+        assertEquals("[50.0, 95.0, 99.0]", Arrays.toString(PercentilesHistoAggregator.percentiles("analytic.percentiles()")));
+    }
+
+    @Test
+    void percentilesAcrossPartials() throws Exception {
+        Search search = new Search();
+        search.expression = "*|*|*|field.getKVPair(latency:)|analytic.percentiles(50,99)|*";
+        long to = System.currentTimeMillis();
+        long from = to - 5 * DateUtil.MINUTE;
+        search.from = from;
+        search.to = to;
+
+        // 1..100 split over 2 files
+        Map<String, StorageInputStream> inputStreams = new HashMap<>();
+        generatePartial(search, inputStreams, from, to, "file1", 1, 50);
+        generatePartial(search, inputStreams, from, to, "file2", 51, 100);
+
+        PercentilesHistoAggregator aggregator = new PercentilesHistoAggregator(inputStreams, search);
+        Map<String, Long> byName = valuesByName(aggregator.process());
+        long p50 = byName.get("p50");
+        long p99 = byName.get("p99");
+        assertTrue(Math.abs(p50 - 50) <= 2, "p50:" + p50);
+        assertTrue(Math.abs(p99 - 99) <= 3, "p99:" + p99);
+    }
+
+    @Test
+    void percentilesPerField() throws Exception {
+        Search search = new Search();
+        search.expression = "*|*|*|field.getKVPair(latency:), field.getKVPair(size:)|analytic.percentiles(50)|*";
+        long to = System.currentTimeMillis();
+        long from = to - 5 * DateUtil.MINUTE;
+        search.from = from;
+        search.to = to;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SimpleHistoCollector histoCollector = new SimpleHistoCollector(baos, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        histoCollector.updateFileInfo("file1", "");
+        for (int i = 1; i <= 100; i++) {
+            histoCollector.add(from, i, "latency:" + i + " size:" + i * 1000);
+        }
+        histoCollector.close();
+        Map<String, StorageInputStream> inputStreams = new HashMap<>();
+        inputStreams.put("file1", new StorageInputStream("file1", System.currentTimeMillis(), baos.size(), new ByteArrayInputStream(baos.toByteArray())));
+
+        Map<String, Long> byName = valuesByName(new PercentilesHistoAggregator(inputStreams, search).process());
+        assertEquals(2, byName.size(), byName.toString());
+        long latency = byName.get("latency-p50");
+        long size = byName.get("size-p50");
+        assertTrue(Math.abs(latency - 50) <= 2, "latency p50:" + latency);
+        assertTrue(Math.abs(size - 50_000) <= 1_500, "size p50:" + size);
+    }
+
+    @Test
+    void processSeries() {
+        Search search = new Search();
+        search.expression = "*|*|*|field.getKVPair(latency:)|analytic.percentiles(50,99)|*";
+        long to = System.currentTimeMillis();
+        long from = to - 5 * DateUtil.MINUTE;
+        search.from = from;
+        search.to = to;
+
+        SimpleHistoCollector collector = new SimpleHistoCollector(null, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        collector.updateFileInfo("file1", "");
+        for (int i = 1; i <= 1000; i++) {
+            collector.add(from, i, "latency:" + i);
+        }
+        List<Series<Long>> collected = new ArrayList<>();
+        collector.series().getValues().forEach(collected::add);
+
+        List<Series<Long>> percentiles = new PercentilesHistoAggregator(null, search).processSeries(collected);
+        assertEquals(2, percentiles.size());
+        Map<String, Long> byName = new HashMap<>();
+        percentiles.forEach(series -> byName.put(series.name(), series.get(from)));
+        long p50 = byName.get("p50");
+        long p99 = byName.get("p99");
+        assertTrue(Math.abs(p50 - 500) <= 15, "p50:" + p50);
+        assertTrue(Math.abs(p99 - 990) <= 30, "p99:" + p99);
+    }
+
+    private void generatePartial(Search search, Map<String, StorageInputStream> inputStreams, long from, long to, String file, int first, int last) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SimpleHistoCollector histoCollector = new SimpleHistoCollector(baos, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        histoCollector.updateFileInfo(file, "");
+        for (int i = first; i <= last; i++) {
+            histoCollector.add(from, i, "latency:" + i);
+        }
+        histoCollector.close();
+        inputStreams.put(file, new StorageInputStream(file, System.currentTimeMillis(), baos.size(), new ByteArrayInputStream(baos.toByteArray())));
+    }
+
+    /**
+     * @return the value of each series in the client json - all of the test values land in one time bucket
+     */
+    private Map<String, Long> valuesByName(String histogram) throws Exception {
+        List<Map<String, Object>> seriesList = new ObjectMapper().readValue(histogram, new TypeReference<List<Map<String, Object>>>() {
+        });
+        Map<String, Long> byName = new HashMap<>();
+        seriesList.forEach(series -> ((List<List<Number>>) series.get("data")).forEach(point -> {
+            if (point.get(1) != null) byName.put((String) series.get("name"), point.get(1).longValue());
+        }));
+        return byName;
+    }
+}
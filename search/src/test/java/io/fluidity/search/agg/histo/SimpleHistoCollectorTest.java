@@ -18,9 +18,15 @@ import io.fluidity.search.Search;
 import io.fluidity.util.DateUtil;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -47,6 +53,189 @@ class SimpleHistoCollectorTest {
         return baos;
     }
 
+    @Test
+    void forkAndMerge() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | * | count() | *";
+        SimpleHistoCollector collector = new SimpleHistoCollector(new ByteArrayOutputStream(), search, from, to, HistoAggFactory.Count);
+        collector.updateFileInfo("someFile", "tags");
+        collector.add(from, 100, "Line");
+
+        HistoCollector forked = collector.fork();
+        forked.add(from, 100, "Line");
+        forked.add(from, 100, "Line");
+        forked.updateFileInfo("otherFile", "tags");
+        forked.add(from, 100, "Line");
+        collector.merge(forked);
+
+        assertEquals(2, collector.series().size());
+        long total = 0;
+        for (Series<Long> series : collector.series().getValues()) {
+            total += series.get(from);
+        }
+        assertEquals(4, total);
+    }
+
+    @Test
+    void boundsSeriesToHeavyHitters() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | field.getKVPair(user:) | analytic.countEach() | *";
+        SimpleHistoCollector collector = new SimpleHistoCollector(null, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        collector.updateFileInfo("someFile", "tags");
+        for (int i = 0; i < 5000; i++) {
+            collector.add(from, i, "user:user" + (i % 10 == 0 ? "Heavy" : Integer.toString(i)));
+        }
+
+        assertTrue(collector.series().size() <= CountEachHistoAggregator.CANDIDATES + 1);
+        long total = 0;
+        Series<Long> heavy = null;
+        for (Series<Long> series : collector.series().getValues()) {
+            total += series.get(from);
+            if (series.name().endsWith("userHeavy")) heavy = series;
+        }
+        assertEquals(5000, total);
+        assertEquals(500, heavy.get(from).longValue());
+    }
+
+    @Test
+    void foldsSeriesOverTheCapIntoOverflow() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | field.getKVPair(user:) | analytic.count() | *";
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SimpleHistoCollector collector = new SimpleHistoCollector(baos, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        collector.setMaxSeries(10);
+        collector.updateFileInfo("someFile", "tags");
+        for (int i = 0; i < 1000; i++) {
+            collector.add(from, i, "user:user" + i);
+        }
+
+        assertEquals(11, collector.series().size());
+        assertTrue(collector.isCapped());
+        assertEquals(990, collector.series().get(SimpleHistoCollector.OVERFLOW).get(from).longValue());
+
+        HistoCollector forked = collector.fork();
+        forked.updateFileInfo("someFile", "tags");
+        for (int i = 0; i < 20; i++) {
+            forked.add(from, i, "user:other" + i);
+        }
+        collector.merge(forked);
+        assertEquals(11, collector.series().size());
+        assertEquals(1010, collector.series().get(SimpleHistoCollector.OVERFLOW).get(from).longValue());
+
+        collector.close();
+        HistoBinaryFormat.Partial partial = HistoBinaryFormat.readPartial(new ByteArrayInputStream(baos.toByteArray()));
+        assertTrue(partial.seriesCapped);
+        assertEquals(11, partial.series.size());
+    }
+
+    @Test
+    void overflowKeepsPercentileBins() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | field.getKVPair(latency:) | analytic.percentiles(50) | *";
+        search.from = from;
+        search.to = to;
+        SimpleHistoCollector collector = new SimpleHistoCollector(null, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        collector.setMaxSeries(10);
+        collector.updateFileInfo("someFile", "tags");
+        for (int i = 1; i <= 1000; i++) {
+            collector.add(from, i, "latency:" + i);
+        }
+        assertTrue(collector.isCapped());
+
+        // every sample is still in a binned series - the overflowed ones under the (other) group
+        List<Series<Long>> collected = new ArrayList<>();
+        long samples = 0;
+        for (Series<Long> series : collector.series().getValues()) {
+            assertTrue(series.name().contains("#"), series.name());
+            samples += series.get(from);
+            collected.add(series);
+        }
+        assertEquals(1000, samples);
+
+        Map<String, Long> percentiles = new HashMap<>();
+        new PercentilesHistoAggregator(null, search).processSeries(collected).forEach(series -> percentiles.put(series.name(), series.get(from)));
+        assertTrue(percentiles.containsKey("p50"), percentiles.toString());
+        assertTrue(percentiles.get(SimpleHistoCollector.OTHER + "-p50") > 10, percentiles.toString());
+    }
+
+    @Test
+    void overflowIsCountedDistinctAsItsOwnGroup() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | field.getKVPair(user:) | analytic.countDistinct() | *";
+        search.from = from;
+        search.to = to;
+        SimpleHistoCollector collector = new SimpleHistoCollector(null, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        collector.setMaxSeries(1);
+        collector.updateFileInfo("someFile", "tags");
+        collector.add(from, 0, "user:a");
+        for (int i = 0; i < 100; i++) {
+            collector.add(from, i, "user:" + i);
+        }
+        List<Series<Long>> collected = new ArrayList<>();
+        collector.series().getValues().forEach(collected::add);
+        assertEquals(SimpleHistoCollector.OTHER, collector.series().get(SimpleHistoCollector.OVERFLOW).groupBy());
+
+        Map<String, Long> counts = new HashMap<>();
+        new CountDistinctHistoAggregator(null, search).processSeries(collected).forEach(series -> counts.put(series.name(), series.get(from)));
+        assertEquals(2, counts.size(), counts.toString());
+        assertTrue(Math.abs(counts.get(SimpleHistoCollector.OTHER) - 100) <= 2, counts.toString());
+    }
+
+    @Test
+    void drainedSeriesMergeIntoARunningTotal() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | field.getKVPair(user:) | analytic.countDistinct() | *";
+        search.from = from;
+        search.to = to;
+        HistoFunction<Long, Long> function = new HistoAggFactory().getHistoAnalyticFunction(search);
+        SimpleHistoCollector collector = new SimpleHistoCollector(null, search, from, to, function);
+        SimpleHistoCollector total = new SimpleHistoCollector(null, search, from, to, function);
+        collector.updateFileInfo("someFile", "tags");
+
+        // overlapping users - summing the two distinct counts would give 120
+        for (int i = 0; i < 60; i++) collector.add(from, i, "user:" + i);
+        total.merge(collector.drain());
+        for (int i = 30; i < 90; i++) collector.add(from, i, "user:" + i);
+        total.merge(collector.drain());
+        assertNull(collector.drain());
+
+        List<Series<Long>> collected = new ArrayList<>();
+        total.series().getValues().forEach(collected::add);
+        long distinct = new CountDistinctHistoAggregator(null, search).processSeries(collected).get(0).get(from);
+        assertTrue(Math.abs(distinct - 90) <= 2, "distinct:" + distinct);
+        assertTrue(new HistoAggFactory().get(null, search).process(collected).contains("\"name\":\"distinct\""));
+    }
+
+    @Test
+    void addsASeriesPerField() throws Exception {
+        long to = System.currentTimeMillis();
+        long from = to - DateUtil.HOUR;
+        Search search = new Search();
+        search.expression = "* | * | * | field.getKVPair(cpu:), field.getKVPair(mem:) | analytic.count() | *";
+        SimpleHistoCollector collector = new SimpleHistoCollector(null, search, from, to, new HistoAggFactory().getHistoAnalyticFunction(search));
+        collector.updateFileInfo("someFile", "tags");
+        collector.add(from, 0, "cpu:10 mem:200");
+        collector.add(from, 1, "cpu:20");
+
+        // each field is its own group
+        assertEquals(2, collector.series().size());
+        assertEquals(2, collector.series().get("cpu-cpu:").get(from).longValue());
+        assertEquals("cpu", collector.series().get("cpu-cpu:").groupBy());
+        assertEquals(1, collector.series().get("mem-mem:").get(from).longValue());
+    }
+
     @Test
     void close() throws Exception {
         ByteArrayOutputStream baos = add();
@@ -0,0 +1,53 @@
+package io.fluidity.search.field.extractor;
+
+import org.graalvm.collections.Pair;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JsonFieldScannerTest {
+
+    @Test
+    void extractsManyTokensInOnePass() {
+        String data = "{\"meta\":{\"uri\":\"https://www.wikidata.org\",\"id\":\"9ef9\"},\"id\":1198791222,\"type\":\"new\"," +
+                "\"comment\":\"quoted \\\"type\\\": here\",\"length\":{\"new\":5677},\"bot\":false,\"empty\":,\"delta\":-12}";
+        JsonFieldScanner scanner = new JsonFieldScanner("meta.uri", "type", "length.new", "id", "bot", "delta", "missing");
+        scanner.scan(data);
+
+        assertEquals(Pair.create("https://www.wikidata.org", 1l), scanner.getKeyAndValue(0));
+        assertEquals(Pair.create("new", 1l), scanner.getKeyAndValue(1));
+        assertEquals(Pair.create("length.new", 5677l), scanner.getKeyAndValue(2));
+        // first occurrence at any depth
+        assertEquals(Pair.create("9ef9", 1l), scanner.getKeyAndValue(3));
+        assertEquals(Pair.create("false", 1l), scanner.getKeyAndValue(4));
+        assertEquals(Pair.create("delta", -12l), scanner.getKeyAndValue(5));
+        assertNull(scanner.getKeyAndValue(6));
+    }
+
+    @Test
+    void joinsDottedTokensThatAreNotNested() {
+        String data = "\"timestamp\":1587210348,\"txn\":\"-kerob\",\"service\":\"rest\", \"operation\":\"myOp\"\"type\":\"microservice\", \"meta\":\"errors\"  TTTT:2020";
+        JsonFieldScanner scanner = new JsonFieldScanner("service.operation", "type", "txn", "tag");
+        scanner.scan(data);
+
+        assertEquals(Pair.create("rest.myOp", 1l), scanner.getKeyAndValue(0));
+        assertEquals(Pair.create("microservice", 1l), scanner.getKeyAndValue(1));
+        assertEquals(Pair.create("-kerob", 1l), scanner.getKeyAndValue(2));
+        assertNull(scanner.getKeyAndValue(3));
+
+        // reused for the next line
+        scanner.scan("{\"service\":\"auth\"}");
+        assertNull(scanner.getKeyAndValue(0));
+        assertNull(scanner.getKeyAndValue(2));
+    }
+
+    @Test
+    void longNumbersAreStrings() {
+        JsonFieldScanner scanner = new JsonFieldScanner("id", "small");
+        scanner.scan("{\"id\":12345678901234567890,\"small\":-123456789012345678}");
+
+        assertEquals(Pair.create("12345678901234567890", 1l), scanner.getKeyAndValue(0));
+        assertEquals(Pair.create("small", -123456789012345678l), scanner.getKeyAndValue(1));
+    }
+}
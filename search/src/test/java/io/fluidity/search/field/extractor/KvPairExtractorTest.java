@@ -17,6 +17,9 @@ package io.fluidity.search.field.extractor;
 import org.graalvm.collections.Pair;
 import org.junit.jupiter.api.Test;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class KvPairExtractorTest {
@@ -33,4 +36,24 @@ class KvPairExtractorTest {
         Pair<String, Long> source = extractor.getKeyAndValue("source", nextLine);
         assertEquals("f947b07c-f755-4e94-bc72-418916c489a6", source.getLeft());
     }
-}
\ No newline at end of file
+
+    @Test
+    void matchesTheOriginalRegex() {
+        String[] keys = {"CPU: ", "CPU:", "user:", "Duration: ", "a:", "Dur[a-z]+: ", "[a-z]+:"};
+        String[] lines = {"INFO SOME CPU: 5  ", "CPU:  CPU:12 CPU: ", "user:bob user:alice", "Duration: 881 ms Billed Duration: 1000 ms",
+                "a:a:5", "no match here", "Duration: 99999999999999999999 ms", "CPU:-5", "a:b:5"};
+        for (String key : keys) {
+            KvPairExtractor extractor = new KvPairExtractor(key);
+            Pattern pattern = Pattern.compile(".*(" + key + ")(\\S+).*");
+            for (String line : lines) {
+                Matcher matcher = pattern.matcher(line);
+                Pair<String, Long> expected = null;
+                if (matcher.matches()) {
+                    String value = matcher.group(2);
+                    expected = value.matches("[0-9]{1,18}") ? Pair.create(matcher.group(1).trim(), Long.parseLong(value)) : Pair.create(value, 1l);
+                }
+                assertEquals(expected, extractor.getKeyAndValue("source", line), key + " in " + line);
+            }
+        }
+    }
+}
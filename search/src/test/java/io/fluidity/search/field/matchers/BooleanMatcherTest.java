@@ -27,4 +27,31 @@ class BooleanMatcherTest {
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void matchesBytes() {
+        byte[] line = "prefix:this is hello and this is goodbye".getBytes();
+        int offset = "prefix:".length();
+        int length = line.length - offset;
+
+        assertTrue(new BooleanMatcher("hello AND goodbye").matches(line, offset, length));
+        assertTrue(new BooleanMatcher("nope OR goodbye").matches(line, offset, length));
+        assertFalse(new BooleanMatcher("hello AND maybe").matches(line, offset, length));
+        assertFalse(new BooleanMatcher("prefix OR maybe").matches(line, offset, length));
+    }
+
+    @Test
+    void matchesManyTerms() {
+        StringBuilder codes = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) codes.append(" OR ");
+            codes.append("E").append(1000 + i);
+        }
+        BooleanMatcher matcher = new BooleanMatcher("host-1 OR host-2 AND " + codes);
+
+        assertTrue(matcher.matches("host-2 failed with E1049"));
+        assertTrue(matcher.matches("E1000 on host-1"));
+        assertFalse(matcher.matches("host-3 failed with E1049"));
+        assertFalse(matcher.matches("host-1 failed with E1050"));
+    }
+}
@@ -0,0 +1,55 @@
+package io.fluidity.search.field.matchers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequiredLiteralsTest {
+
+    @Test
+    void extract() {
+        assertEquals(Collections.singletonList("CPU"), RequiredLiterals.extract(".*CPU.*"));
+        assertEquals(Arrays.asList("user=", " txn-", " done"), RequiredLiterals.extract(".*user=\\w+ txn-[0-9]+ done.*"));
+        assertEquals(Arrays.asList("ERRO", "host.com"), RequiredLiterals.extract(".*ERROR?(\\d+)host\\.com.*"));
+        assertEquals(Collections.singletonList("ab"), RequiredLiterals.extract("abc{0,2}"));
+        // alternation means no single literal is required
+        assertEquals(Collections.emptyList(), RequiredLiterals.extract(".*(WARN|ERROR).*"));
+        assertEquals(Collections.emptyList(), RequiredLiterals.extract("(?i).*error.*"));
+    }
+
+    @Test
+    void escapesAreSkippedWhole() {
+        assertEquals(Arrays.asList("ab", "cd"), RequiredLiterals.extract("ab\\u0041cd"));
+        assertEquals(Collections.emptyList(), RequiredLiterals.extract("\\x41"));
+        assertEquals(Arrays.asList("a", "b"), RequiredLiterals.extract("a\\x{41}b"));
+        assertEquals(Collections.singletonList("9"), RequiredLiterals.extract("\\01019"));
+        assertEquals(Collections.singletonList("z"), RequiredLiterals.extract("\\cAz"));
+        assertEquals(Arrays.asList("a", "b"), RequiredLiterals.extract("a\\p{Lu}b"));
+        assertEquals(Collections.singletonList("b"), RequiredLiterals.extract("\\pLb"));
+        assertEquals(Collections.singletonList("b"), RequiredLiterals.extract("\\N{LATIN SMALL LETTER A}b"));
+        assertEquals(Arrays.asList("a", "b"), RequiredLiterals.extract("a\\k<name>b"));
+    }
+
+    @Test
+    void matchingLinesContainEveryLiteral() {
+        String[][] regexAndLines = {
+                {".*ab\\u0041cd.*", "xxabAcd"},
+                {".*id:\\x41\\x{42} .*", "id:AB done"},
+                {".*\\0101 \\cI.*", "A \t"},
+                {".*\\p{Lu}\\pL\\P{L}.*", "Ab1"},
+                {".*\\N{LATIN SMALL LETTER A}b.*", "ab"},
+                {"(a)\\1b", "aab"},
+        };
+        for (String[] regexAndLine : regexAndLines) {
+            assertTrue(Pattern.compile(regexAndLine[0]).matcher(regexAndLine[1]).matches(), regexAndLine[0]);
+            for (String literal : RequiredLiterals.extract(regexAndLine[0])) {
+                assertTrue(regexAndLine[1].contains(literal), regexAndLine[0] + " requires:" + literal);
+            }
+        }
+    }
+}
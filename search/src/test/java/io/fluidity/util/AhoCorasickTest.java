@@ -0,0 +1,21 @@
+package io.fluidity.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AhoCorasickTest {
+
+    @Test
+    void scanFindsOverlappingTerms() {
+        byte[][] terms = {"he".getBytes(), "she".getBytes(), "his".getBytes(), "hers".getBytes()};
+        AhoCorasick automaton = new AhoCorasick(terms, new long[]{1, 2, 4, 8});
+
+        byte[] line = "ushers".getBytes();
+        assertEquals(1 | 2 | 8, automaton.scan(line, 0, line.length, 15));
+        // stops once the requested bits are seen
+        assertEquals(1 | 2, automaton.scan(line, 0, line.length, 2));
+        // honours the window
+        assertEquals(0, automaton.scan(line, 3, 3, 15));
+    }
+}
@@ -0,0 +1,43 @@
+package io.fluidity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockBloomIndexTest {
+
+    @Test
+    void buildWriteAndCheckBlocks() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("2020-01-01 INFO request handled txn=abc").append(i).append(" ok\n");
+        }
+        byte[] bytes = content.toString().getBytes();
+
+        BlockBloomIndex index = BlockBloomIndex.build(new ByteArrayInputStream(bytes), 4 * 1024);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.write(baos);
+        index = BlockBloomIndex.read(new ByteArrayInputStream(baos.toByteArray()));
+
+        assertTrue(index.size() > 5);
+        assertEquals(0, index.offset(0));
+        assertEquals(bytes.length, index.end(index.size() - 1, bytes.length));
+
+        int found = -1;
+        for (int block = 0; block < index.size(); block++) {
+            String text = new String(bytes, (int) index.offset(block), (int) (index.end(block, bytes.length) - index.offset(block)));
+            assertTrue(text.startsWith("2020-01-01"), "Blocks should start on a line");
+            if (text.contains("txn=abc777 ")) found = block;
+            assertTrue(index.mayContain(block, "request handled"));
+            assertFalse(index.mayContain(block, "ERROR"));
+        }
+        assertTrue(found >= 0);
+        assertTrue(index.mayContain(found, "abc777 "));
+        assertFalse(index.mayContain(0, "abc777 "));
+    }
+}
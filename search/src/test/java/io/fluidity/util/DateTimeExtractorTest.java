@@ -11,12 +11,14 @@
 
 package io.fluidity.util;
 
+import org.joda.time.format.DateTimeFormat;
 import org.junit.jupiter.api.Test;
 
 import java.util.Date;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DateTimeExtractorTest {
 
@@ -83,5 +85,42 @@ class DateTimeExtractorTest {
         assertEquals(52, x.getMinutes());
     }
 
+    @Test
+    public void fixedLayoutsMatchJoda() {
+        final String[] formats = {"yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd HH:mm:ss,SSS", "yyyy-MM-dd HH:mm:ss"};
+        final String[] lines = {"2020-11-24T13:31:47.313Z INFO", "2020-06-15 01:30:00,001 WARN", "2024-02-29 23:59:59 ERROR"};
+        for (int i = 0; i < formats.length; i++) {
+            final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor(formats[i]);
+            assertTrue(dateTimeExtractor.parser() instanceof DateTimeExtractor.FixedDateTimeParser, formats[i]);
+            final long expected = DateTimeFormat.forPattern(formats[i]).parseDateTime(lines[i].substring(0, formats[i].replace("'", "").length())).getMillis();
+            assertEquals(expected, dateTimeExtractor.getTimeMaybe(0, 100, lines[i]), formats[i]);
+        }
+    }
+
+    @Test
+    public void shouldGetLog4jAutoTimeWithinTheSameSecond() {
+        final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor("");
+        final long first = dateTimeExtractor.getTimeMaybe(0, 100, "2020-11-24 13:31:47,313 INFO one");
+        final long second = dateTimeExtractor.getTimeMaybe(0, 100, "2020-11-24 13:31:47,999 INFO two");
+        final long third = dateTimeExtractor.getTimeMaybe(0, 100, "2020-11-24 13:31:48,000 INFO three");
+        assertEquals(686, second - first);
+        assertEquals(1, third - second);
+        assertEquals(47, new Date(first).getSeconds());
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void keepsConfiguredFormatAfterUnparseableLine() {
+        final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor("yyyy-MM-dd HH:mm.SS");
+        final long first = dateTimeExtractor.getTimeMaybe(0, 100, "2020-02-14 13:01.22 starting");
+        assertEquals(first + 100, dateTimeExtractor.getTimeMaybe(first, 100, "\tat io.fluidity.Main(Main.java:10)"));
+        final long third = dateTimeExtractor.getTimeMaybe(first, 100, "2020-02-14 13:02.22 done");
+        assertEquals(2, new Date(third).getMinutes());
+    }
+
+    @Test
+    public void epochMillisFromPrefix() {
+        final DateTimeExtractor dateTimeExtractor = new DateTimeExtractor("prefix:[\"ts\":] LONG");
+        assertEquals(1586443934123l, dateTimeExtractor.getTimeMaybe(0, 100, "{\"ts\":1586443934123,\"x\":1}"));
+        assertEquals(100, dateTimeExtractor.getTimeMaybe(0, 100, "{\"ts\":\"nope\",\"x\":1}"));
+    }
+}
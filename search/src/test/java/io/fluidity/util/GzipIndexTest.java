@@ -0,0 +1,90 @@
+package io.fluidity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipIndexTest {
+
+    @Test
+    void readsFromTheNearestCheckpoint() throws Exception {
+        byte[] content = makeFileContent(40_000);
+        byte[] gz = gzip(content, Deflater.DEFAULT_COMPRESSION);
+
+        GzipIndex index = GzipIndex.build(gz, 128 * 1024);
+        assertEquals(content.length, index.length());
+        assertTrue(index.size() > 5);
+
+        for (long offset : new long[]{0, 100, 128 * 1024 + 7, content.length / 2, content.length - 10}) {
+            assertReadsFrom(index, gz, content, offset);
+        }
+    }
+
+    @Test
+    void readsStoredBlocksAndFollowingMembers() throws Exception {
+        byte[] first = makeFileContent(10_000);
+        byte[] second = makeFileContent(10_000);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(first, Deflater.NO_COMPRESSION));
+        members.write(gzip(second, Deflater.BEST_COMPRESSION));
+        byte[] gz = members.toByteArray();
+        byte[] content = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, content, first.length, second.length);
+
+        GzipIndex index = GzipIndex.build(gz, 64 * 1024);
+        assertEquals(content.length, index.length());
+
+        // survives the sidecar round trip
+        ByteArrayOutputStream sidecar = new ByteArrayOutputStream();
+        index.write(sidecar);
+        index = GzipIndex.read(new ByteArrayInputStream(sidecar.toByteArray()));
+
+        for (long offset : new long[]{64 * 1024 + 1, first.length - 5, first.length + 3, content.length - 1}) {
+            assertReadsFrom(index, gz, content, offset);
+        }
+    }
+
+    private void assertReadsFrom(GzipIndex index, byte[] gz, byte[] content, long offset) throws IOException {
+        try (InputStream inputStream = index.open(position -> {
+            ByteArrayInputStream compressed = new ByteArrayInputStream(gz);
+            compressed.skip(position);
+            return compressed;
+        }, offset)) {
+            byte[] read = inputStream.readAllBytes();
+            assertArrayEquals(Arrays.copyOfRange(content, (int) offset, content.length), read, "Offset:" + offset);
+        }
+    }
+
+    private byte[] gzip(byte[] content, int level) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return baos.toByteArray();
+    }
+
+    private byte[] makeFileContent(int lines) {
+        Random random = new Random(lines);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            content.append("2020-06-15 10:").append(i % 60).append(' ').append(random.nextBoolean() ? "INFO" : "ERROR")
+                    .append(" user:").append(random.nextInt(500)).append(" took:").append(random.nextGaussian()).append('\n');
+        }
+        return content.toString().getBytes();
+    }
+}
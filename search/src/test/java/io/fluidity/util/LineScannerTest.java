@@ -0,0 +1,62 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+package io.fluidity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineScannerTest {
+
+    @Test
+    void scansLinesAndPositions() throws Exception {
+        String content = "line one\r\nline two\n\nlast line no eoln";
+        LineScanner scanner = new LineScanner(new ByteArrayInputStream(content.getBytes()), 4);
+
+        List<String> lines = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        while (scanner.next()) {
+            lines.add(scanner.lineAsString());
+            positions.add(scanner.position());
+        }
+
+        assertEquals(4, lines.size());
+        assertEquals("line one", lines.get(0));
+        assertEquals("line two", lines.get(1));
+        assertEquals("", lines.get(2));
+        assertEquals("last line no eoln", lines.get(3));
+
+        assertEquals(0L, positions.get(0));
+        assertEquals(10L, positions.get(1));
+        assertEquals(19L, positions.get(2));
+        assertEquals(20L, positions.get(3));
+        assertFalse(scanner.next());
+    }
+
+    @Test
+    void indexOfBytes() throws Exception {
+        byte[] line = "some line of CPU data".getBytes();
+        assertEquals(13, ByteUtil.indexOf(line, 0, line.length, "CPU".getBytes()));
+        assertEquals(-1, ByteUtil.indexOf(line, 0, 15, "CPU".getBytes()));
+        assertEquals(-1, ByteUtil.indexOf(line, 14, line.length - 14, "CPU".getBytes()));
+        assertTrue(ByteUtil.contains(line, 0, line.length, "data".getBytes()));
+    }
+}
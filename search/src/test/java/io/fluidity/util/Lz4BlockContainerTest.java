@@ -0,0 +1,138 @@
+package io.fluidity.util;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Lz4BlockContainerTest {
+
+    private static final long START = 1592215200000l;
+
+    @Test
+    void writesLineAlignedBlocksWithAFooter() throws Exception {
+        byte[] content = makeFileContent(10_000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Lz4BlockContainer written = Lz4BlockContainer.write(new ByteArrayInputStream(content), baos, "yyyy-MM-dd HH:mm:ss", 64 * 1024);
+        byte[] container = baos.toByteArray();
+
+        Lz4BlockContainer read = Lz4BlockContainer.read(offset -> open(container, offset), container.length);
+        assertEquals(written.blocks().size(), read.blocks().size());
+        assertTrue(read.blocks().size() > 5);
+        assertEquals(content.length, read.length());
+        assertEquals(START, read.fromTime());
+        assertEquals(START + 9_999 * 1000l, read.toTime());
+
+        int lines = 0;
+        for (Lz4BlockContainer.Block block : read.blocks()) {
+            assertEquals('\n', content[(int) (block.out + block.outLength - 1)]);
+            lines += block.lines;
+        }
+        assertEquals(10_000, lines);
+
+        // any lz4 reader sees the plain content - the footer is in a skippable frame
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (InputStream inputStream = ParallelDecompressInputStream.open(new ByteArrayInputStream(container), "file.lz4", executor, 2)) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void prunesBlocksByTime() throws Exception {
+        byte[] content = makeFileContent(10_000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Lz4BlockContainer.write(new ByteArrayInputStream(content), baos, "yyyy-MM-dd HH:mm:ss", 64 * 1024);
+        byte[] container = baos.toByteArray();
+        Lz4BlockContainer read = Lz4BlockContainer.read(offset -> open(container, offset), container.length);
+
+        long from = START + 5_000 * 1000l;
+        long[][] ranges = read.ranges(from, from + 1000);
+        assertEquals(1, ranges.length);
+
+        try (InputStream inputStream = read.open(offset -> open(container, offset), ranges[0][0])) {
+            String block = new String(inputStream.readNBytes((int) (ranges[0][1] - ranges[0][0])));
+            assertTrue(block.contains(" line:5000\n"));
+        }
+        try (InputStream inputStream = read.open(offset -> open(container, offset), ranges[0][0] + 10)) {
+            assertArrayEquals(Arrays.copyOfRange(content, (int) ranges[0][0] + 10, content.length), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void mergesAdjacentBlocksWithTheirTimes() throws Exception {
+        byte[] content = makeFileContent(10_000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Lz4BlockContainer container = Lz4BlockContainer.write(new ByteArrayInputStream(content), baos, "yyyy-MM-dd HH:mm:ss", 16 * 1024);
+        int blocks = container.blocks().size();
+
+        long[][] ranges = container.ranges(0, Long.MAX_VALUE, 64 * 1024);
+        assertTrue(ranges.length > 1 && ranges.length < blocks);
+        assertEquals(0, ranges[0][0]);
+        assertEquals(content.length, ranges[ranges.length - 1][1]);
+        for (int i = 0; i < ranges.length; i++) {
+            assertTrue(ranges[i][1] - ranges[i][0] <= 64 * 1024);
+            if (i > 0) assertEquals(ranges[i - 1][1], ranges[i][0]);
+        }
+        // times come from the footer, not the position
+        assertEquals(START, ranges[0][2]);
+        assertEquals(START + 9_999 * 1000l, ranges[ranges.length - 1][3]);
+        assertEquals(ranges[0][3] + 1000, ranges[1][2]);
+
+        // without a merge length every block is its own range
+        assertEquals(blocks, container.ranges(0, Long.MAX_VALUE).length);
+    }
+
+    @Test
+    void readsTheFooterWithOneOpen() throws Exception {
+        byte[] content = makeFileContent(10_000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Lz4BlockContainer written = Lz4BlockContainer.write(new ByteArrayInputStream(content), baos, "yyyy-MM-dd HH:mm:ss", 4 * 1024);
+        byte[] container = baos.toByteArray();
+
+        AtomicInteger opens = new AtomicInteger();
+        Lz4BlockContainer read = Lz4BlockContainer.read(offset -> {
+            opens.incrementAndGet();
+            return open(container, offset);
+        }, container.length);
+        assertEquals(written.blocks().size(), read.blocks().size());
+        assertEquals(1, opens.get());
+
+        // not the stored length
+        assertNull(Lz4BlockContainer.read(offset -> open(container, offset), container.length * 4l));
+    }
+
+    @Test
+    void plainLz4HasNoFooter() throws Exception {
+        byte[] plain = "not a container".getBytes();
+        assertNull(Lz4BlockContainer.read(offset -> open(plain, offset), plain.length));
+    }
+
+    private InputStream open(byte[] bytes, long offset) {
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+        inputStream.skip(offset);
+        return inputStream;
+    }
+
+    private byte[] makeFileContent(int lines) {
+        DateTimeFormatter dateTimeFormatter = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            content.append(dateTimeFormatter.print(START + i * 1000l)).append(" INFO line:").append(i).append('\n');
+        }
+        return content.toString().getBytes();
+    }
+}
@@ -0,0 +1,121 @@
+package io.fluidity.util;
+
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelDecompressInputStreamTest {
+
+    @Test
+    void inflatesBgzipMembersInOrder() throws Exception {
+        byte[] content = makeFileContent(20_000);
+        ByteArrayOutputStream bgzip = new ByteArrayOutputStream();
+        for (int offset = 0; offset < content.length; offset += 60_000) {
+            bgzip.write(bgzfMember(content, offset, Math.min(60_000, content.length - offset)));
+        }
+        // bgzip end of file marker
+        bgzip.write(bgzfMember(content, 0, 0));
+
+        assertArrayEquals(content, read(bgzip.toByteArray(), "file.log.gz", true));
+    }
+
+    @Test
+    void rejectsOversizedBgzipMembers() throws Exception {
+        byte[] content = makeFileContent(100);
+        byte[] member = bgzfMember(content, 0, content.length);
+        // ISIZE claims 1GB
+        member[member.length - 1] = 0x40;
+
+        assertThrows(IOException.class, () -> read(member, "file.log.gz", true));
+    }
+
+    @Test
+    void decompressesIndependentLz4Blocks() throws Exception {
+        byte[] content = makeFileContent(20_000);
+        ByteArrayOutputStream lz4 = new ByteArrayOutputStream();
+        try (LZ4FrameOutputStream outputStream = new LZ4FrameOutputStream(lz4, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB)) {
+            outputStream.write(content);
+        }
+
+        assertArrayEquals(content, read(lz4.toByteArray(), "file.log.lz4", true));
+    }
+
+    @Test
+    void plainGzipIsReadSequentially() throws Exception {
+        byte[] content = makeFileContent(1_000);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream outputStream = new GZIPOutputStream(gzip)) {
+            outputStream.write(content);
+        }
+
+        assertArrayEquals(content, read(gzip.toByteArray(), "file.log.gz", false));
+    }
+
+    /**
+     * @return the decompressed bytes
+     */
+    private byte[] read(byte[] compressed, String name, boolean parallel) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (InputStream inputStream = ParallelDecompressInputStream.open(new ByteArrayInputStream(compressed), name, executor, 3)) {
+            assertEquals(parallel, inputStream instanceof ParallelDecompressInputStream);
+            return inputStream.readAllBytes();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private byte[] bgzfMember(byte[] content, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content, offset, length);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        int blockSize = 18 + deflated.size() + 8;
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        member.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+        member.write((blockSize - 1) & 0xFF);
+        member.write((blockSize - 1) >>> 8);
+        deflated.writeTo(member);
+        CRC32 crc = new CRC32();
+        crc.update(content, offset, length);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, length);
+        return member.toByteArray();
+    }
+
+    private void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private byte[] makeFileContent(int lines) {
+        Random random = new Random(lines);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            content.append("2020-06-15 10:").append(i % 60).append(" INFO user:").append(random.nextInt(500))
+                    .append(" took:").append(random.nextGaussian()).append('\n');
+        }
+        return content.toString().getBytes();
+    }
+}
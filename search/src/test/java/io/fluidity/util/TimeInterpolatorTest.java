@@ -0,0 +1,48 @@
+package io.fluidity.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeInterpolatorTest {
+
+    @Test
+    public void estimatesByPositionAndReanchors() {
+        final long from = System.currentTimeMillis() - DateUtil.HOUR;
+        final long to = from + 100_000;
+        final TimeInterpolator interpolator = new TimeInterpolator(false, from, to, 10_000);
+
+        assertEquals(from, interpolator.estimate(0));
+        assertEquals(from + 50_000, interpolator.estimate(5_000));
+
+        // a real timestamp - the rest of the file spans what is left of the time range
+        interpolator.anchor(from + 90_000, 5_000);
+        assertEquals(from + 90_000, interpolator.estimate(5_000));
+        assertEquals(from + 95_000, interpolator.estimate(7_500));
+        assertEquals(to - 200, interpolator.estimate(10_000));
+    }
+
+    @Test
+    public void averagesTheRecentWindowOfLines() {
+        final long from = System.currentTimeMillis() - DateUtil.HOUR;
+        final TimeInterpolator interpolator = new TimeInterpolator(false, from, from + 100_000, 10_000);
+        for (int i = 0; i < TimeInterpolator.WINDOW; i++) {
+            interpolator.addLine(10);
+        }
+        assertEquals(10, interpolator.averageLineLength());
+
+        for (int i = 0; i < TimeInterpolator.WINDOW; i++) {
+            interpolator.addLine(50);
+        }
+        assertEquals(50, interpolator.averageLineLength());
+    }
+
+    @Test
+    public void doesNotGoBackwardsPastTheEnd() {
+        final long from = System.currentTimeMillis() - DateUtil.HOUR;
+        final long to = from + 100_000;
+        final TimeInterpolator interpolator = new TimeInterpolator(false, from, to, 10_000);
+        interpolator.anchor(to + 10, 20_000);
+        assertEquals(to + 10, interpolator.estimate(30_000));
+    }
+}
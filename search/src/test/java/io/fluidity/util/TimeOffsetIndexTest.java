@@ -0,0 +1,46 @@
+package io.fluidity.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeOffsetIndexTest {
+
+    @Test
+    void buildWriteAndSeek() throws Exception {
+        StringBuilder content = new StringBuilder();
+        long start = 1600000000000L;
+        for (int i = 0; i < 1000; i++) {
+            content.append(start + i * 1000).append(" some event ").append(i).append('\n');
+        }
+        byte[] bytes = content.toString().getBytes();
+
+        TimeOffsetIndex index = TimeOffsetIndex.build(new ByteArrayInputStream(bytes), "LONG", 1024);
+        assertTrue(index.size() > 10, "Should have an entry every 1k");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        index.write(baos);
+        // trailing junk is ignored
+        baos.write(new byte[10]);
+        index = TimeOffsetIndex.read(new ByteArrayInputStream(baos.toByteArray()));
+
+        long from = start + 500 * 1000;
+        long to = start + 600 * 1000;
+        TimeOffsetIndex.Range range = index.seek(from, to, bytes.length, start, start + 1000 * 1000);
+        assertTrue(range.startOffset > 0 && range.endOffset < bytes.length, "Should have narrowed the scan");
+        assertTrue(range.fromTime <= from && range.toTime >= to);
+
+        String scanned = new String(bytes, (int) range.startOffset, (int) range.length());
+        assertTrue(scanned.contains(" some event 500\n") && scanned.contains(" some event 599\n"));
+        assertTrue(scanned.startsWith(Long.toString(range.fromTime)));
+
+        // outside of the index - scan everything
+        range = index.seek(start - 1, start + 2000 * 1000, bytes.length, start, start + 1000 * 1000);
+        assertEquals(0, range.startOffset);
+        assertEquals(bytes.length, range.endOffset);
+    }
+}
@@ -348,6 +348,25 @@ public class AwsS3StorageService implements Storage {
         }
     }
 
+    @Override
+    public StorageInputStream getInputStream(String region, String tenant, String storageUrl, long offset) {
+        bind();
+        try {
+            String[] hostnameAndPath = UriUtil.getHostnameAndPath(storageUrl);
+            String bucket = hostnameAndPath[0];
+            String filename = hostnameAndPath[1];
+
+            // ranged GET - streamed rather than copied locally as only part of the object may be read
+            S3Object s3object = getAmazonS3Client(region).getObject(new GetObjectRequest(bucket, filename).withRange(offset));
+            ObjectMetadata objectMetadata = s3object.getObjectMetadata();
+            return new StorageInputStream(filename, objectMetadata.getLastModified().getTime(), objectMetadata.getInstanceLength(),
+                    new BufferedInputStream(s3object.getObjectContent()));
+        } catch (Exception e) {
+            log.error("Failed to retrieve {} at:{}", storageUrl, offset, e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Map<String, StorageInputStream> getInputStreams(String region, String tenant, String filePathPrefix, String filenameExtension, long fromTime) {
         String bucketName = getBucketName(tenant);
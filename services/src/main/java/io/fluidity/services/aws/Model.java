@@ -33,6 +33,7 @@ public class Model {
                             , longNumberAttribute(Fields.size.name(), FileMeta::getSize, FileMeta::setSize)
                             , stringAttribute(Fields.tags.name(), FileMeta::getTags, FileMeta::setTags)
                             , stringAttribute(Fields.timeFormat.name(), FileMeta::getTimeFormat, FileMeta::setTimeFormat)
+                            , stringAttribute(Fields.indexes.name(), FileMeta::getIndexes, FileMeta::setIndexes)
                     )
                     .build();
 
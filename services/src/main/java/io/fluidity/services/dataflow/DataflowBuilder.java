@@ -24,7 +24,8 @@ import io.fluidity.search.agg.events.StorageUtil;
 import io.fluidity.services.query.FileMeta;
 import io.fluidity.services.query.QueryService;
 import io.fluidity.services.storage.Storage;
-import net.jpountz.lz4.LZ4FrameInputStream;
+import io.fluidity.services.storage.StorageTimeIndex;
+import io.fluidity.util.ParallelDecompressInputStream;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,13 +36,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 import static io.fluidity.dataflow.Model.CORR_HIST_PREFIX;
 import static io.fluidity.dataflow.Model.LADDER_HIST_PREFIX;
 
 public class DataflowBuilder {
+    private static final int decompressAhead = Runtime.getRuntime().availableProcessors();
     private long limitList = 5000;
     private final Logger log = LoggerFactory.getLogger(DataflowBuilder.class);
 
@@ -69,15 +71,21 @@ public class DataflowBuilder {
         try {
             log.info(FlowLogHelper.format(session, "builder", "extractFlow", "File:" + fileMeta.filename));
             final String fileUrl = fileMeta.getStorageUrl();
-            final StorageInputStream inputStream = getInputStream(storage, region, tenant, fileUrl);
+            final StorageTimeIndex.TimeRangeInputStream timeRange = StorageTimeIndex.open(storage, region, tenant, fileMeta, search.from, search.to);
+            final StorageInputStream inputStream = timeRange != null ? timeRange.inputStream : getInputStream(storage, region, tenant, fileUrl);
 
             String status = "";
             try (
                     DataflowExtractor dataflowExtractor = new DataflowExtractor(inputStream, getOutStreamFactory(storage),
                             modelPath, region, tenant)
             ) {
-                status = dataflowExtractor.process(fileMeta.isCompressed(), search, fileMeta.fromTime, fileMeta.toTime,
-                        fileMeta.size, fileMeta.timeFormat);
+                if (timeRange != null) {
+                    status = dataflowExtractor.process(false, search, timeRange.range.fromTime, timeRange.range.toTime,
+                            timeRange.range.length(), fileMeta.timeFormat);
+                } else {
+                    status = dataflowExtractor.process(fileMeta.isCompressed(), search, fileMeta.fromTime, fileMeta.toTime,
+                            fileMeta.size, fileMeta.timeFormat);
+                }
             } catch (Exception e) {
                 log.warn("Failed to process:" + fileMeta.filename, e);
                 e.printStackTrace();
@@ -107,14 +115,8 @@ public class DataflowBuilder {
 
     private StorageInputStream getInputStream(final Storage storage, final String region, final String tenant,
                                               final String fileUrl) throws IOException {
-        StorageInputStream inputStream = storage.getInputStream(region, tenant, fileUrl);
-        if (fileUrl.endsWith(".gz")) {
-            inputStream = inputStream.copy(new GZIPInputStream(inputStream.inputStream));
-        }
-        if (fileUrl.endsWith(".lz4")) {
-            inputStream = inputStream.copy(new LZ4FrameInputStream(inputStream.inputStream));
-        }
-        return inputStream;
+        final StorageInputStream inputStream = storage.getInputStream(region, tenant, fileUrl);
+        return inputStream.copy(ParallelDecompressInputStream.open(inputStream.inputStream, fileUrl, ForkJoinPool.commonPool(), decompressAhead));
     }
 
     public String status(final String session, final String modelName) {
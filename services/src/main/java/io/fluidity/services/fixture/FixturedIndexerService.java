@@ -1,7 +1,10 @@
 package io.fluidity.services.fixture;
 
 import io.fluidity.services.query.FileMeta;
+import io.fluidity.services.storage.Storage;
+import io.fluidity.services.storage.StorageBloomIndex;
 import io.fluidity.services.storage.StorageIndexer;
+import io.fluidity.services.storage.StorageTimeIndex;
 import io.fluidity.util.DateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +33,7 @@ public class FixturedIndexerService implements StorageIndexer {
      * @return
      */
     @Override
-    public FileMeta index(FileMeta fileMeta, String cloudRegion) {
+    public FileMeta index(FileMeta fileMeta, String cloudRegion, Storage storage) {
         if (fileMeta.getToTime() == 0) {
             fileMeta.setToTime(System.currentTimeMillis());
             fileMeta.setFromTime(fileMeta.getToTime() - DateUtil.HOUR);
@@ -41,6 +44,8 @@ public class FixturedIndexerService implements StorageIndexer {
         } else {
             fileMeta.setFromTime(fileMeta.getToTime() - DateUtil.HOUR);
         }
+        StorageTimeIndex.write(storage, cloudRegion, fileMeta);
+        StorageBloomIndex.write(storage, cloudRegion, fileMeta);
 
         return fileMeta;
     }
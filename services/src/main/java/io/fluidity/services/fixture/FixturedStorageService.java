@@ -80,6 +80,15 @@ public class FixturedStorageService implements Storage {
         return new StorageInputStream(storageUrl, System.currentTimeMillis(), content.length, inputStream);
     }
 
+    @Override
+    public StorageInputStream getInputStream(String region, String tenant, String storageUrl, long offset) {
+        byte[] content = this.get(region, storageUrl, 0);
+        if (content == null)
+            throw new RuntimeException(String.format("Failed to find:%s Available:%s", storageUrl, storage.keySet()));
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(content);
+        inputStream.skip(offset);
+        return new StorageInputStream(storageUrl, System.currentTimeMillis(), content.length, inputStream);
+    }
 
     @Override
     public Map<String, StorageInputStream> getInputStreams(String region, String tenant, String uid, String filenameExtension, long fromTime) {
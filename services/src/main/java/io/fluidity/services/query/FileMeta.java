@@ -5,6 +5,7 @@ import org.jboss.resteasy.annotations.jaxrs.FormParam;
 import org.jboss.resteasy.annotations.providers.multipart.PartType;
 
 import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 /**
  * Captured relevant file meta data: name, location, source, size, tags etc
@@ -40,7 +41,7 @@ public class FileMeta {
     }
 
     // This is used to help with ORM mappings
-    public enum Fields {filename, fileContent, tenant, resource, tags, storageUrl, fromTime, toTime, size, timeFormat}
+    public enum Fields {filename, fileContent, tenant, resource, tags, storageUrl, fromTime, toTime, size, timeFormat, indexes}
 
     @FormParam("filename")
     @PartType(MediaType.TEXT_PLAIN)
@@ -73,6 +74,12 @@ public class FileMeta {
 
     public long size;
 
+    /**
+     * Suffixes of the sidecar indexes written next to the stored file (i.e. ".tidx .bidx") - a search only looks for
+     * the ones listed, imported files have none
+     */
+    public String indexes = "";
+
 
     public String getTags() {
         return tags;
@@ -188,6 +195,22 @@ public class FileMeta {
         return size;
     }
 
+    public String getIndexes() {
+        return indexes;
+    }
+
+    public void setIndexes(String indexes) {
+        this.indexes = indexes;
+    }
+
+    public boolean hasIndex(String suffix) {
+        return indexes != null && Arrays.asList(indexes.split(" ")).contains(suffix);
+    }
+
+    public void addIndex(String suffix) {
+        if (!hasIndex(suffix)) indexes = indexes == null || indexes.isEmpty() ? suffix : indexes + " " + suffix;
+    }
+
     public String getTimeFormat() {
         if (timeFormat == "") timeFormat = "*";
         return timeFormat;
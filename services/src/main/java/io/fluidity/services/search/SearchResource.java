@@ -14,6 +14,7 @@
 
 package io.fluidity.services.search;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.fluidity.dataflow.FlowLogHelper;
 import io.fluidity.search.Search;
@@ -26,9 +27,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -95,14 +100,15 @@ public class SearchResource {
     @POST
     @Path("/finalizeEvents/{tenant}/{fromTime}")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public String[] finaliseEvents(@PathParam("tenant") String tenant, @MultipartForm Search search, @PathParam("fromTime") long from) {
+    public String[] finaliseEvents(@PathParam("tenant") String tenant, @MultipartForm Search search, @PathParam("fromTime") long from,
+                                   @QueryParam("cursor") String cursor) {
 
         long start = System.currentTimeMillis();
         try {
             log.info(FlowLogHelper.format(search.uid, "search", "finalizeEvents", "Start"));
             search.decodeJsonFields();
             eventLimit = 10000;
-            return searchRunner.finalizeEvents(search, from, eventLimit, tenant, cloudRegion, storage);
+            return searchRunner.finalizeEvents(search, from, eventLimit, cursor, tenant, cloudRegion, storage);
         } catch (Throwable t) {
             t.printStackTrace();
             log.error("finalizeEventsFailed", t);
@@ -113,6 +119,66 @@ public class SearchResource {
         }
     }
 
+    /**
+     * Single call alternative to submit/files/finalize*: streams 'files', then 'histo' (the running total, periodically) and 'event' messages as
+     * they are found, and 'done' with [readEvents, totalEvents]
+     */
+    @POST
+    @Path("/stream/{tenant}")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void stream(@PathParam("tenant") String tenant, @MultipartForm Search search, @Context SseEventSink eventSink, @Context Sse sse) {
+        long start = System.currentTimeMillis();
+        try (SseEventSink sink = eventSink) {
+            log.info(FlowLogHelper.format(search.uid, "search", "stream", "Start:" + search.expression));
+            search.decodeJsonFields();
+            ObjectMapper objectMapper = new ObjectMapper();
+
+            searchRunner.stream(tenant, search, query, storage, cloudRegion, eventLimit, new SearchStream() {
+                @Override
+                public void files(FileMeta[] files) {
+                    try {
+                        send("files", objectMapper.writeValueAsString(Arrays.stream(files).map(file -> file.filename).toArray()));
+                    } catch (JsonProcessingException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public void histo(String histoJson) {
+                    send("histo", histoJson);
+                }
+
+                @Override
+                public void event(String event) {
+                    send("event", event);
+                }
+
+                @Override
+                public void done(int readEvents, int totalEvents) {
+                    send("done", "[" + readEvents + "," + totalEvents + "]");
+                }
+
+                @Override
+                public boolean isClosed() {
+                    return sink.isClosed();
+                }
+
+                // files are scanned concurrently
+                private synchronized void send(String name, String data) {
+                    if (!sink.isClosed()) {
+                        sink.send(sse.newEventBuilder().name(name).data(String.class, data).build());
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            log.error("/search/stream failed", t);
+        } finally {
+            log.info("Stream Elapsed:{}", (System.currentTimeMillis() - start));
+            log.info(FlowLogHelper.format(search.uid, "search", "stream", "End"));
+        }
+    }
+
     @POST
     @Path("/finalizeHisto/{tenant}")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
@@ -39,13 +39,20 @@ public interface SearchRunner {
     String finalizeHisto(Search search, String tenant, String region, Storage storage);
 
     /**
-     * Returns [ numEvents, Histo, rawEvents ]
+     * Returns [ numEvents, rawEvents, fileLut, cursor ]
      *
      * @param search
+     * @param cursor - from the previous page to resume from, or null to start at 'from'
      * @param tenant
      * @param region
      * @param storage
      * @return
      */
-    String[] finalizeEvents(Search search, long from, int limit, String tenant, String region, Storage storage);
+    String[] finalizeEvents(Search search, long from, int limit, String cursor, String tenant, String region, Storage storage);
+
+    /**
+     * Submit, search and aggregate in one call - pushing per-file histogram deltas and the first eventLimit events to the
+     * listener as they are found (nothing is staged)
+     */
+    void stream(String tenant, Search search, QueryService query, Storage storage, String region, int eventLimit, SearchStream listener);
 }
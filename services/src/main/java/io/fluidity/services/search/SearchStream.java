@@ -0,0 +1,47 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.services.search;
+
+import io.fluidity.services.query.FileMeta;
+
+/**
+ * Receives search results while the scan is running - see SearchRunner.stream
+ */
+public interface SearchStream {
+
+    /**
+     * Sent first - events reference the file by its index into this array
+     */
+    void files(FileMeta[] files);
+
+    /**
+     * The histogram (client json, as finalizeHisto) of everything scanned so far - sent periodically while files are
+     * scanned and once they all complete. Each one replaces the last
+     */
+    void histo(String histoJson);
+
+    /**
+     * @param event fileIdx:timestamp:filepos:data
+     */
+    void event(String event);
+
+    void done(int readEvents, int totalEvents);
+
+    /**
+     * @return true once the client has gone away - scanning stops
+     */
+    boolean isClosed();
+}
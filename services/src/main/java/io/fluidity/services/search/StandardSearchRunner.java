@@ -17,16 +17,27 @@ package io.fluidity.services.search;
 import io.fluidity.search.Search;
 import io.fluidity.search.StorageInputStream;
 import io.fluidity.search.agg.events.EventCollector;
+import io.fluidity.search.agg.events.EventsCursor;
+import io.fluidity.search.agg.events.ForwardingEventOutputStream;
+import io.fluidity.search.agg.events.IndexedEventOutputStream;
 import io.fluidity.search.agg.events.LineByLineEventAggregator;
 import io.fluidity.search.agg.events.SearchEventCollector;
+import io.fluidity.search.agg.events.SplitSearchEventCollector;
 import io.fluidity.search.agg.histo.HistoAggFactory;
 import io.fluidity.search.agg.histo.HistoAggregator;
 import io.fluidity.search.agg.histo.HistoCollector;
+import io.fluidity.search.agg.histo.Series;
 import io.fluidity.search.agg.histo.SimpleHistoCollector;
 import io.fluidity.services.query.FileMeta;
 import io.fluidity.services.query.QueryService;
 import io.fluidity.services.storage.Storage;
-import net.jpountz.lz4.LZ4FrameInputStream;
+import io.fluidity.services.storage.StorageBlockContainer;
+import io.fluidity.services.storage.StorageBloomIndex;
+import io.fluidity.services.storage.StorageTimeIndex;
+import io.fluidity.util.Lz4BlockContainer;
+import io.fluidity.util.ParallelDecompressInputStream;
+import io.fluidity.util.TimeOffsetIndex;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,12 +45,44 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 public class StandardSearchRunner implements SearchRunner {
+    public static final String SPLIT_SIZE = "fluidity.search.split.size";
+    public static final String SPLIT_THREADS = "fluidity.search.split.threads";
+    public static final String FILE_THREADS = "fluidity.search.file.threads";
+    public static final String DECOMPRESS_AHEAD = "fluidity.search.decompress.ahead";
+    public static final String HISTO_INTERVAL = "fluidity.search.stream.histo.ms";
+
+    /**
+     * Uncompressed files larger than this are scanned as parallel byte ranges
+     */
+    private static final long splitSize = Long.getLong(SPLIT_SIZE, 64 * 1024 * 1024);
+    private static final int splitThreads = Integer.getInteger(SPLIT_THREADS, Runtime.getRuntime().availableProcessors());
+    private static final ForkJoinPool splitPool = new ForkJoinPool(splitThreads);
+
+    /**
+     * How many gzip members/lz4 blocks of a file are decompressed ahead of the scan (on the split pool)
+     */
+    private static final int decompressAhead = Integer.getInteger(DECOMPRESS_AHEAD, splitThreads);
+
+    /**
+     * Bounds how many files of a batch are scanned at the same time
+     */
+    private static final ForkJoinPool filePool = new ForkJoinPool(Integer.getInteger(FILE_THREADS, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Streaming: how often the histogram collected so far is sent while files are still being scanned
+     */
+    private static final long histoInterval = Long.getLong(HISTO_INTERVAL, 1000);
+
     private long limitList = 5000;
     private final Logger log = LoggerFactory.getLogger(StandardSearchRunner.class);
 
@@ -67,21 +110,20 @@ public class StandardSearchRunner implements SearchRunner {
         List<Integer[]> results = new ArrayList<>();
         try (HistoCollector histoCollector = new SimpleHistoCollector(histoOutputStream, search, search.from, search.to, new HistoAggFactory().getHistoAnalyticFunction(search))) {
 
+            /**
+             * Files are scanned concurrently - each with its own (forked) histo collector and search, folded back in batch order
+             */
+            List<HistoCollector> fileCollectors = new ArrayList<>();
+            List<Future<Integer[]>> futures = new ArrayList<>();
             for (FileMeta fileMeta : fileMetaBatch) {
-                try {
-                    String searchUrl = fileMeta.getStorageUrl();
-                    StorageInputStream inputStream = getInputStream(storage, region, tenant, searchUrl);
-                    histoCollector.updateFileInfo(fileMeta.filename, firstFile.tags);
-
-                    try (
-                            EventCollector searchProcessor = getCollectors(search, storage, tenant, searchUrl, inputStream.inputStream, region, histoCollector)
-                    ) {
-                        results.add(searchProcessor.process(fileMeta.isCompressed(), search, fileMeta.fromTime, inputStream.lastModified, inputStream.length, fileMeta.timeFormat));
-                    }
-                } catch (Exception e) {
-                    log.warn("Failed to process data:{}", fileMeta.filename, e);
-                    results.add(new Integer[]{0, 0, 0});
-                }
+                HistoCollector fileCollector = histoCollector.fork();
+                fileCollector.updateFileInfo(fileMeta.filename, firstFile.tags);
+                fileCollectors.add(fileCollector);
+                futures.add(filePool.submit(() -> searchFile(fileMeta, search.copy(), storage, region, tenant, fileCollector)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(futures.get(i).get());
+                histoCollector.merge(fileCollectors.get(i));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -90,21 +132,197 @@ public class StandardSearchRunner implements SearchRunner {
         return results;
     }
 
+    private Integer[] searchFile(FileMeta fileMeta, Search search, Storage storage, String region, String tenant, HistoCollector histoCollector) {
+        try {
+            String searchUrl = fileMeta.getStorageUrl();
+
+            // re-compressed on import - only the blocks that overlap the search window are decompressed, in parallel
+            Lz4BlockContainer container = StorageBlockContainer.read(storage, region, tenant, fileMeta);
+            if (container != null) {
+                // adjacent blocks are scanned together - in ranges the size a normal split would use
+                long[][] ranges = container.ranges(search.from, search.to, Math.max(splitSize, container.length()) / splitThreads);
+                if (ranges.length == 0) return new Integer[]{0, 0};
+                Lz4BlockContainer.Source source = StorageBlockContainer.source(storage, region, tenant, fileMeta);
+                try (EventCollector searchProcessor = getRangeCollectors(search, storage, tenant, searchUrl, region, histoCollector, ranges,
+                        offset -> container.open(source, offset))) {
+                    return searchProcessor.process(false, search, fileMeta.fromTime, fileMeta.toTime, container.length(), fileMeta.timeFormat);
+                }
+            }
+
+            // skip the blocks (or the whole file) that cannot contain a match
+            long[][] blockRanges = StorageBloomIndex.candidates(storage, region, tenant, fileMeta, search);
+            if (blockRanges != null) {
+                if (blockRanges.length == 0) return new Integer[]{0, 0};
+                try (EventCollector searchProcessor = getRangeCollectors(search, storage, tenant, searchUrl, region, histoCollector, blockRanges,
+                        offset -> storage.getInputStream(region, tenant, searchUrl, offset).inputStream)) {
+                    return searchProcessor.process(false, search, fileMeta.fromTime, fileMeta.toTime, fileMeta.size, fileMeta.timeFormat);
+                }
+            }
+
+            // only read the part of the file that overlaps the search window
+            StorageTimeIndex.TimeRangeInputStream timeRange = StorageTimeIndex.open(storage, region, tenant, fileMeta, search.from, search.to);
+            if (timeRange != null) {
+                try (EventCollector searchProcessor = getCollectors(search, storage, tenant, searchUrl, timeRange.inputStream.inputStream, region, histoCollector)) {
+                    return searchProcessor.process(false, search, timeRange.range.fromTime, timeRange.range.toTime, timeRange.range.length(), fileMeta.timeFormat);
+                }
+            }
+
+            if (isSplittable(fileMeta)) {
+                try (EventCollector searchProcessor = getSplitCollectors(search, storage, tenant, searchUrl, region, histoCollector)) {
+                    return searchProcessor.process(false, search, fileMeta.fromTime, fileMeta.toTime, fileMeta.size, fileMeta.timeFormat);
+                }
+            }
+            StorageInputStream inputStream = getInputStream(storage, region, tenant, searchUrl);
+
+            try (
+                    EventCollector searchProcessor = getCollectors(search, storage, tenant, searchUrl, inputStream.inputStream, region, histoCollector)
+            ) {
+                return searchProcessor.process(fileMeta.isCompressed(), search, fileMeta.fromTime, inputStream.lastModified, inputStream.length, fileMeta.timeFormat);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to process data:{}", fileMeta.filename, e);
+            return new Integer[]{0, 0, 0};
+        }
+    }
+
+    @Override
+    public void stream(String tenant, Search search, QueryService query, Storage storage, String region, int eventLimit, SearchStream listener) {
+        FileMeta[] files = submit(tenant, search, query);
+        listener.files(files);
+
+        AtomicInteger sentEvents = new AtomicInteger();
+        StreamedHisto histo = new StreamedHisto(search, listener);
+        List<Future<Integer[]>> futures = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            int fileIdx = i;
+            FileMeta fileMeta = files[i];
+            futures.add(filePool.submit(() -> streamFile(fileIdx, fileMeta, search.copy(), storage, region, tenant, eventLimit, sentEvents, histo, listener)));
+        }
+        int readEvents = 0;
+        int totalEvents = 0;
+        for (Future<Integer[]> future : futures) {
+            try {
+                Integer[] counts = future.get();
+                readEvents += counts[0];
+                totalEvents += counts[1];
+            } catch (Exception e) {
+                log.warn("Stream failed", e);
+            }
+        }
+        histo.send();
+        listener.done(readEvents, totalEvents);
+    }
+
+    private Integer[] streamFile(int fileIdx, FileMeta fileMeta, Search search, Storage storage, String region, String tenant, int eventLimit,
+                                 AtomicInteger sentEvents, StreamedHisto histo, SearchStream listener) {
+        if (listener.isClosed()) return new Integer[]{0, 0, 0};
+        String prefix = fileIdx + ":";
+        ForwardingEventOutputStream events = new ForwardingEventOutputStream(event -> {
+            if (sentEvents.getAndIncrement() < eventLimit) listener.event(prefix + event);
+        }, () -> sentEvents.get() < eventLimit);
+        Integer[] counts;
+        try (SimpleHistoCollector histoCollector = new SimpleHistoCollector(null, search, search.from, search.to, new HistoAggFactory().getHistoAnalyticFunction(search))) {
+            histoCollector.updateFileInfo(fileMeta.filename, fileMeta.tags);
+            StorageInputStream inputStream = getInputStream(storage, region, tenant, fileMeta.getStorageUrl());
+            long[] lastHisto = {System.currentTimeMillis()};
+            try (SearchEventCollector searchProcessor = new SearchEventCollector(histoCollector, inputStream.inputStream, events).withProgress(() -> {
+                if (listener.isClosed()) return false;
+                if (System.currentTimeMillis() - lastHisto[0] > histoInterval) {
+                    histo.add(histoCollector);
+                    lastHisto[0] = System.currentTimeMillis();
+                }
+                return true;
+            })) {
+                counts = searchProcessor.process(fileMeta.isCompressed(), search, fileMeta.fromTime, inputStream.lastModified, inputStream.length, fileMeta.timeFormat);
+            }
+            histo.add(histoCollector);
+        } catch (Exception e) {
+            log.warn("Failed to stream data:{}", fileMeta.filename, e);
+            return new Integer[]{0, 0, 0};
+        }
+        return counts;
+    }
+
+    /**
+     * Streaming: files drain their series into a running total which is processed like finalizeHisto and sent whole -
+     * the client replaces its histogram (summing per file deltas is only right for count())
+     */
+    private class StreamedHisto {
+        private final SimpleHistoCollector total;
+        private final HistoAggregator<Long> aggregator;
+        private final SearchStream listener;
+        private long lastSent = System.currentTimeMillis();
+
+        private StreamedHisto(Search search, SearchStream listener) {
+            HistoAggFactory histoAggFactory = new HistoAggFactory();
+            this.total = new SimpleHistoCollector(null, search, search.from, search.to, histoAggFactory.getHistoAnalyticFunction(search));
+            this.aggregator = histoAggFactory.get(null, search);
+            this.listener = listener;
+        }
+
+        private synchronized void add(SimpleHistoCollector histoCollector) {
+            SimpleHistoCollector drained = histoCollector.drain();
+            if (drained != null) total.merge(drained);
+            if (System.currentTimeMillis() - lastSent > histoInterval) send();
+        }
+
+        private synchronized void send() {
+            lastSent = System.currentTimeMillis();
+            if (total.series().isEmpty()) return;
+            try {
+                List<Series<Long>> series = new ArrayList<>();
+                total.series().getValues().forEach(series::add);
+                listener.histo(aggregator.process(series));
+            } catch (Exception e) {
+                log.warn("Failed to send histo", e);
+            }
+        }
+    }
+
     private EventCollector getCollectors(Search search, Storage storage, String tenant, String searchUrl, InputStream inputStream, String region, HistoCollector histoCollector) {
+        return new SearchEventCollector(histoCollector, inputStream, getEventsOutputStream(search, storage, tenant, searchUrl, region));
+    }
+
+    /**
+     * The staged .events file - with a time index written next to it so pages can start from a point in time
+     */
+    private OutputStream getEventsOutputStream(Search search, Storage storage, String tenant, String searchUrl, String region) {
         String searchDestinationUrl = search.eventsDestinationURI(storage.getBucketName(tenant), searchUrl);
         OutputStream outputStream = storage.getOutputStream(region, tenant, searchDestinationUrl, 1, System.currentTimeMillis());
-        return new SearchEventCollector(histoCollector, inputStream, outputStream);
+        return new IndexedEventOutputStream(outputStream, IndexedEventOutputStream.DEFAULT_INTERVAL, index -> {
+            try (OutputStream indexStream = storage.getOutputStream(region, tenant, searchDestinationUrl + TimeOffsetIndex.SUFFIX, 1, System.currentTimeMillis())) {
+                index.write(indexStream);
+            } catch (Exception e) {
+                log.warn("Failed to write events index:{}", searchDestinationUrl, e);
+            }
+        });
+    }
+
+    /**
+     * @return the file details when it is large, uncompressed and the storage supports seeking - otherwise null
+     */
+    /**
+     * fileMeta.size is the stored length - uncompressed files are stored as is
+     */
+    private boolean isSplittable(FileMeta fileMeta) {
+        return splitThreads > 1 && !fileMeta.isCompressed() && fileMeta.size >= splitSize;
+    }
+
+    private EventCollector getSplitCollectors(Search search, Storage storage, String tenant, String searchUrl, String region, HistoCollector histoCollector) {
+        OutputStream outputStream = getEventsOutputStream(search, storage, tenant, searchUrl, region);
+        return new SplitSearchEventCollector(histoCollector, offset -> storage.getInputStream(region, tenant, searchUrl, offset).inputStream,
+                outputStream, splitPool, splitThreads);
+    }
+
+    private EventCollector getRangeCollectors(Search search, Storage storage, String tenant, String searchUrl, String region, HistoCollector histoCollector,
+                                              long[][] ranges, SplitSearchEventCollector.SeekableSource source) {
+        OutputStream outputStream = getEventsOutputStream(search, storage, tenant, searchUrl, region);
+        return new SplitSearchEventCollector(histoCollector, source, outputStream, splitPool, ranges);
     }
 
     private StorageInputStream getInputStream(Storage storage, String region, String tenant, String searchUrl) throws IOException {
         StorageInputStream inputStream = storage.getInputStream(region, tenant, searchUrl);
-        if (searchUrl.endsWith(".gz")) {
-            inputStream = inputStream.copy(new GZIPInputStream(inputStream.inputStream));
-        }
-        if (searchUrl.endsWith(".lz4")) {
-            inputStream = inputStream.copy(new LZ4FrameInputStream(inputStream.inputStream));
-        }
-        return inputStream;
+        return inputStream.copy(ParallelDecompressInputStream.open(inputStream.inputStream, searchUrl, splitPool, decompressAhead));
     }
 
     @Override
@@ -115,6 +333,9 @@ public class StandardSearchRunner implements SearchRunner {
 
         try (HistoAggregator histoAgg = new HistoAggFactory().get(storage.getInputStreams(region, tenant, search.stagingPrefix(), Search.histoSuffix, 0), search)) {
             histoAggJsonData = histoAgg.process();
+            if (histoAgg.seriesCapped()) {
+                log.warn("Series limit reached, some series were folded into overflow:{}", search.expression);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -123,13 +344,22 @@ public class StandardSearchRunner implements SearchRunner {
     }
 
     @Override
-    public String[] finalizeEvents(Search search, long fromTime, int limit, String tenant, String region, Storage storage) {
+    public String[] finalizeEvents(Search search, long fromTime, int limit, String cursor, String tenant, String region, Storage storage) {
         long start = System.currentTimeMillis();
 
         String[] eventAggs;
 
-        Map<String, StorageInputStream> inputStreams = storage.getInputStreams(region, tenant, search.stagingPrefix(), Search.eventsSuffix, fromTime);
-        try (LineByLineEventAggregator eventAggregator = new LineByLineEventAggregator(inputStreams, search)) {
+        Map<String, Long> startOffsets = new HashMap<>();
+        Map<String, StorageInputStream> inputStreams;
+        if (EventsCursor.isPresent(cursor)) {
+            LinkedHashMap<String, Long> offsets = EventsCursor.decode(cursor);
+            inputStreams = openAtCursor(search, offsets, tenant, region, storage);
+            startOffsets.putAll(offsets);
+        } else {
+            inputStreams = storage.getInputStreams(region, tenant, search.stagingPrefix(), Search.eventsSuffix, fromTime);
+            if (fromTime > 0) seekToTime(inputStreams, startOffsets, fromTime, tenant, region, storage);
+        }
+        try (LineByLineEventAggregator eventAggregator = new LineByLineEventAggregator(inputStreams, startOffsets, search)) {
             eventAggs = eventAggregator.process(fromTime, limit);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -138,4 +368,77 @@ public class StandardSearchRunner implements SearchRunner {
 
         return eventAggs;
     }
-}
\ No newline at end of file
+
+    /**
+     * Only the staged files that still have events are opened, each at the next unread line. The cursor comes from the
+     * client so it may only name this search's staged .events files, at offsets within them - their sizes come from a
+     * listing of the staging prefix, nothing is opened to check them
+     */
+    private Map<String, StorageInputStream> openAtCursor(Search search, LinkedHashMap<String, Long> offsets, String tenant, String region, Storage storage) {
+        String stagingPrefix = search.stagingPrefix();
+        Map<String, Long> stagedSizes = new HashMap<>();
+        storage.listBucketAndProcess(region, tenant, stagingPrefix, (itemRegion, itemUrl, itemName, modified, size) ->
+                stagedSizes.put(storageKey(storage, tenant, itemUrl), size));
+        offsets.forEach((url, offset) -> {
+            String key = storageKey(storage, tenant, url);
+            Long size = stagedSizes.get(key);
+            if (!key.startsWith(stagingPrefix) || !key.endsWith(Search.eventsSuffix) || key.contains("..") || size == null
+                    || offset == null || offset < 0 || offset > size) {
+                throw new IllegalArgumentException("Invalid events cursor:" + url + " offset:" + offset);
+            }
+        });
+
+        Map<String, StorageInputStream> inputStreams = new LinkedHashMap<>();
+        offsets.forEach((url, offset) -> {
+            StorageInputStream inputStream = storage.getInputStream(region, tenant, toStorageUrl(storage, tenant, url), offset);
+            if (inputStream == null) {
+                inputStream = storage.getInputStream(region, tenant, toStorageUrl(storage, tenant, url));
+                try {
+                    IOUtils.skipFully(inputStream.inputStream, offset);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            inputStreams.put(url, inputStream);
+        });
+        return inputStreams;
+    }
+
+    /**
+     * Skips the part of each staged file before fromTime when it has an index (see IndexedEventOutputStream)
+     */
+    private void seekToTime(Map<String, StorageInputStream> inputStreams, Map<String, Long> startOffsets, long fromTime, String tenant, String region, Storage storage) {
+        inputStreams.forEach((url, inputStream) -> {
+            try (InputStream indexStream = storage.getInputStream(region, tenant, toStorageUrl(storage, tenant, url) + TimeOffsetIndex.SUFFIX).inputStream) {
+                TimeOffsetIndex.Range range = TimeOffsetIndex.read(indexStream).seek(fromTime, Long.MAX_VALUE, inputStream.length, 0, 0);
+                if (range.startOffset > 0) {
+                    IOUtils.skipFully(inputStream.inputStream, range.startOffset);
+                    startOffsets.put(url, range.startOffset);
+                }
+            } catch (Exception e) {
+                // small files are not indexed
+                log.debug("No events index:{}", url);
+            }
+        });
+    }
+
+    /**
+     * Staged files are listed by key on s3
+     */
+    private String toStorageUrl(Storage storage, String tenant, String url) {
+        return url.startsWith("storage://") ? url : String.format("storage://%s/%s", storage.getBucketName(tenant), url);
+    }
+
+    /**
+     * @return the key within the tenant's bucket - s3 lists by key, the file system by path and cursors hold storage urls
+     */
+    private String storageKey(Storage storage, String tenant, String url) {
+        String bucket = stripStorageScheme(storage.getBucketName(tenant)) + "/";
+        String key = stripStorageScheme(url);
+        return key.startsWith(bucket) ? key.substring(bucket.length()) : key;
+    }
+
+    private String stripStorageScheme(String url) {
+        return url.startsWith("storage://") ? url.substring("storage://".length()) : url;
+    }
+}
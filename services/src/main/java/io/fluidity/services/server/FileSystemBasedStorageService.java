@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -118,6 +119,7 @@ public class FileSystemBasedStorageService implements Storage {
 
     @Override
     public StorageInputStream getInputStream(String region, String tenant, String storageUrl) {
+        if (storageUrl.startsWith("storage://")) storageUrl = storageUrl.substring("storage://".length());
         try {
             File file = new File(storageUrl);
             return new StorageInputStream(file.getName(), file.lastModified(), file.length(), new LazyFileInputStream(file));
@@ -127,6 +129,20 @@ public class FileSystemBasedStorageService implements Storage {
         }
     }
 
+    @Override
+    public StorageInputStream getInputStream(String region, String tenant, String storageUrl, long offset) {
+        if (storageUrl.startsWith("storage://")) storageUrl = storageUrl.substring("storage://".length());
+        try {
+            File file = new File(storageUrl);
+            FileInputStream inputStream = new FileInputStream(file);
+            inputStream.getChannel().position(offset);
+            return new StorageInputStream(file.getName(), file.lastModified(), file.length(), inputStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Map<String, StorageInputStream> getInputStreams(String region, String tenant, String prefix, String filenameExtension, long fromTime) {
         Collection<File> files = FileUtil.listDirs(this.baseDir + "/" + prefix, filenameExtension);
@@ -41,6 +41,12 @@ public interface Storage extends Lifecycle {
 
     StorageInputStream getInputStream(String region, String tenant, String storageUrl);
 
+    /**
+     * Random access into the raw (stored) content - used to scan large files as parallel ranges
+     * @return null when the store cannot cheaply seek to the offset
+     */
+    StorageInputStream getInputStream(String region, String tenant, String storageUrl, long offset);
+
     OutputStream getOutputStream(String region, String tenant, String filePathUrl, int daysRetention, long lastModified);
 
     Map<String, StorageInputStream> getInputStreams(String region, String tenant, String prefix, String filepathSuffix, long fromTime);
@@ -0,0 +1,124 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.services.storage;
+
+import io.fluidity.search.StorageInputStream;
+import io.fluidity.services.query.FileMeta;
+import io.fluidity.util.DateTimeExtractor;
+import io.fluidity.util.Lz4BlockContainer;
+import io.fluidity.util.ParallelDecompressInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Optionally re-compresses uploaded and imported files into an Lz4BlockContainer (stored as name.lz4) - and reads the
+ * container footer back so a search can skip the blocks outside its time window
+ */
+public class StorageBlockContainer {
+    public static final String ENABLED = "fluidity.import.recompress";
+    public static final String BLOCK_SIZE = "fluidity.import.block.size";
+    // as for storage.upload - 0 sets no expiry, the container is kept until it is removed
+    public static final int DAYS_RETENTION = 0;
+
+    private static final Logger log = LoggerFactory.getLogger(StorageBlockContainer.class);
+    private static final int blockSize = Integer.getInteger(BLOCK_SIZE, Lz4BlockContainer.DEFAULT_BLOCK_SIZE);
+
+    /**
+     * Replaces uploaded content with a container
+     */
+    public static FileMeta rewrite(FileMeta fileMeta) {
+        if (!Boolean.getBoolean(ENABLED) || fileMeta.fileContent == null || fileMeta.fileContent.length == 0) return fileMeta;
+        try {
+            // uploads are already held in memory - the container is stored along with the rest of the FileMeta
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(fileMeta.fileContent.length / 4);
+            Lz4BlockContainer container = recompress(fileMeta, new ByteArrayInputStream(fileMeta.fileContent), baos);
+            update(fileMeta, container);
+            fileMeta.fileContent = baos.toByteArray();
+            fileMeta.size = fileMeta.fileContent.length;
+        } catch (Exception e) {
+            log.warn("Failed to re-compress:{}", fileMeta.filename, e);
+        }
+        return fileMeta;
+    }
+
+    /**
+     * Copies an imported file (which is left where it is) into storage as a container - streamed, as imports can be
+     * far larger than the heap
+     */
+    public static FileMeta importAsContainer(Storage storage, String region, FileMeta fileMeta) {
+        if (!Boolean.getBoolean(ENABLED)) return fileMeta;
+        String storageUrl = String.format("storage://%s/%s/%s", storage.getBucketName(fileMeta.tenant), fileMeta.resource, containerName(fileMeta.filename));
+        try (CountingOutputStream output = new CountingOutputStream(storage.getOutputStream(region, fileMeta.tenant, storageUrl, DAYS_RETENTION, fileMeta.toTime))) {
+            StorageInputStream source = storage.getInputStream(region, fileMeta.tenant, fileMeta.getStorageUrl());
+            Lz4BlockContainer container = recompress(fileMeta, source.inputStream, output);
+            output.flush();
+            update(fileMeta, container);
+            fileMeta.size = output.getByteCount();
+            fileMeta.setStorageUrl(storageUrl);
+            return fileMeta;
+        } catch (Exception e) {
+            log.warn("Failed to re-compress:{}", fileMeta.filename, e);
+            return fileMeta;
+        }
+    }
+
+    private static Lz4BlockContainer recompress(FileMeta fileMeta, InputStream raw, OutputStream output) throws IOException {
+        try (InputStream content = ParallelDecompressInputStream.open(raw, fileMeta.filename, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors())) {
+            return Lz4BlockContainer.write(content, output, fileMeta.timeFormat, blockSize);
+        }
+    }
+
+    private static void update(FileMeta fileMeta, Lz4BlockContainer container) {
+        fileMeta.filename = containerName(fileMeta.filename);
+        if (container.fromTime() != DateTimeExtractor.NO_TIME) {
+            fileMeta.fromTime = container.fromTime();
+            fileMeta.toTime = container.toTime();
+        }
+    }
+
+    private static String containerName(String filename) {
+        if (filename.endsWith(".gz")) return filename.substring(0, filename.length() - ".gz".length()) + ".lz4";
+        return filename.endsWith(".lz4") ? filename : filename + ".lz4";
+    }
+
+    /**
+     * fileMeta.size is the stored length, so the footer is read with a single open - a size that is only an estimate
+     * (as for files imported from a file system) means the file is searched as plain LZ4
+     *
+     * @return the footer of a container - or null for any other file, or when the storage cannot seek
+     */
+    public static Lz4BlockContainer read(Storage storage, String region, String tenant, FileMeta fileMeta) {
+        if (!fileMeta.filename.endsWith(".lz4") || fileMeta.size <= 0) return null;
+        try {
+            return Lz4BlockContainer.read(source(storage, region, tenant, fileMeta), fileMeta.size);
+        } catch (Exception e) {
+            log.warn("Failed to read container footer:{}", fileMeta.filename, e);
+            return null;
+        }
+    }
+
+    public static Lz4BlockContainer.Source source(Storage storage, String region, String tenant, FileMeta fileMeta) {
+        return offset -> storage.getInputStream(region, tenant, fileMeta.getStorageUrl(), offset).inputStream;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.services.storage;
+
+import io.fluidity.search.Search;
+import io.fluidity.services.query.FileMeta;
+import io.fluidity.util.BlockBloomIndex;
+import io.fluidity.util.TimeOffsetIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional BlockBloomIndex sidecar (storageUrl + .bidx) - enabled with -Dfluidity.index.bloom=true. Lets a search skip the
+ * blocks of an uncompressed file (or the whole file) that cannot contain the literals of its record matcher.
+ */
+public class StorageBloomIndex {
+    public static final String ENABLED = "fluidity.index.bloom";
+    public static final String BLOCK_SIZE = "fluidity.index.bloom.block";
+
+    private static final Logger log = LoggerFactory.getLogger(StorageBloomIndex.class);
+    private static final long blockSize = Long.getLong(BLOCK_SIZE, BlockBloomIndex.DEFAULT_BLOCK_SIZE);
+
+    public static void write(Storage storage, String region, FileMeta fileMeta) {
+        if (!Boolean.getBoolean(ENABLED) || fileMeta.isCompressed() || fileMeta.fileContent == null || fileMeta.fileContent.length == 0) return;
+        try {
+            BlockBloomIndex index = BlockBloomIndex.build(new ByteArrayInputStream(fileMeta.fileContent), blockSize);
+            try (OutputStream outputStream = storage.getOutputStream(region, fileMeta.tenant, fileMeta.getStorageUrl() + BlockBloomIndex.SUFFIX, StorageTimeIndex.DAYS_RETENTION, System.currentTimeMillis())) {
+                index.write(outputStream);
+            }
+            fileMeta.addIndex(BlockBloomIndex.SUFFIX);
+        } catch (Exception e) {
+            log.warn("Failed to write bloom index:{}", fileMeta.filename, e);
+        }
+    }
+
+    /**
+     * @return the byte ranges that may match (adjacent blocks joined) and overlap the search window when there is a time
+     * index - or null when the feature is off, the file was not indexed (see FileMeta.indexes) or every block may match.
+     * The file length is fileMeta.size
+     */
+    public static long[][] candidates(Storage storage, String region, String tenant, FileMeta fileMeta, Search search) {
+        if (!Boolean.getBoolean(ENABLED) || fileMeta.isCompressed() || !fileMeta.hasIndex(BlockBloomIndex.SUFFIX) || fileMeta.size <= 0) return null;
+        BlockBloomIndex index = read(storage, region, tenant, fileMeta.getStorageUrl());
+        if (index == null) return null;
+
+        long length = fileMeta.size;
+        TimeOffsetIndex.Range window = StorageTimeIndex.seek(storage, region, tenant, fileMeta, search.from, search.to, length, fileMeta.toTime);
+        long windowStart = window != null ? window.startOffset : 0;
+        long windowEnd = window != null ? window.endOffset : length;
+
+        List<long[]> ranges = new ArrayList<>();
+        int matched = 0;
+        for (int block = 0; block < index.size(); block++) {
+            int current = block;
+            if (!search.mayMatch(literal -> index.mayContain(current, literal))) continue;
+            matched++;
+            long from = Math.max(index.offset(block), windowStart);
+            long to = Math.min(index.end(block, length), windowEnd);
+            if (from >= to) continue;
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == from) {
+                last[1] = to;
+            } else {
+                ranges.add(new long[]{from, to});
+            }
+        }
+        if (matched == index.size()) return null;
+        return ranges.toArray(new long[0][]);
+    }
+
+    private static BlockBloomIndex read(Storage storage, String region, String tenant, String storageUrl) {
+        try (InputStream inputStream = storage.getInputStream(region, tenant, storageUrl + BlockBloomIndex.SUFFIX).inputStream) {
+            return BlockBloomIndex.read(inputStream);
+        } catch (Exception e) {
+            // not indexed
+            return null;
+        }
+    }
+}
@@ -17,5 +17,8 @@ public interface StorageIndexer {
      */
     FileMeta enrichMeta(FileMeta fileMeta);
 
-    FileMeta index(FileMeta fileMeta, String cloudRegion);
+    /**
+     * Extract time range etc - and write any sidecar indexes (i.e. StorageTimeIndex) next to the stored file
+     */
+    FileMeta index(FileMeta fileMeta, String cloudRegion, Storage storage);
 }
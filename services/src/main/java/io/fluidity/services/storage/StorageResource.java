@@ -31,6 +31,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * First (naive) implementation.
@@ -69,13 +70,14 @@ public class StorageResource {
             log.debug("uploadFile:" + fileMeta);
 
             fileMeta.size = Long.valueOf(fileMeta.fileContent.length);
+            fileMeta = StorageBlockContainer.rewrite(fileMeta);
 
             // this series of actions should be put on an event queue
             FileMeta indexedFile = indexer.enrichMeta(fileMeta);
             FileMeta storedAndIndexedFile = storage.upload(cloudRegion, indexedFile);
             // ideally we would trigger an indexing function from the S3 bucket write.
             // for now Im doing it in process here.
-            FileMeta stored = indexer.index(storedAndIndexedFile, cloudRegion);
+            FileMeta stored = indexer.index(storedAndIndexedFile, cloudRegion, storage);
 
             query.put(stored);
             stored.fileContent = new byte[0];
@@ -98,7 +100,8 @@ public class StorageResource {
 
         log.debug("importFromStorage");
         try {
-            List<FileMeta> imported = storage.importFromStorage(cloudRegion, tenant, storageId, prefix, ageDays, includeFileMask, tags, timeFormat);
+            List<FileMeta> imported = storage.importFromStorage(cloudRegion, tenant, storageId, prefix, ageDays, includeFileMask, tags, timeFormat)
+                    .stream().map(fileMeta -> StorageBlockContainer.importAsContainer(storage, cloudRegion, fileMeta)).collect(Collectors.toList());
 
             // newest first
             Collections.sort(imported, (o1, o2) -> Long.compare(o2.toTime, o1.toTime));
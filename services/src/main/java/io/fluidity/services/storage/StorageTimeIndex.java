@@ -0,0 +1,149 @@
+/*
+ *
+ *  Copyright (c) 2020. Liquidlabs Ltd <info@liquidlabs.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software  distributed under the License is distributed on an "AS IS" BASIS,  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ *   See the License for the specific language governing permissions and  limitations under the License.
+ *
+ */
+
+
+package io.fluidity.services.storage;
+
+import io.fluidity.search.StorageInputStream;
+import io.fluidity.services.query.FileMeta;
+import io.fluidity.util.GzipIndex;
+import io.fluidity.util.TimeOffsetIndex;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads/writes the TimeOffsetIndex sidecar (storageUrl + .tidx) of uncompressed files and opens the byte range of a file
+ * that overlaps a time window.
+ * <p>
+ * Gzip files also get a GzipIndex (storageUrl + .gzidx) - their time index holds uncompressed offsets and the range is
+ * inflated from the nearest checkpoint.
+ */
+public class StorageTimeIndex {
+    public static final String INTERVAL = "fluidity.index.time.interval";
+    public static final String GZIP_SPAN = "fluidity.index.gzip.span";
+    public static final int DAYS_RETENTION = 365;
+
+    private static final Logger log = LoggerFactory.getLogger(StorageTimeIndex.class);
+    private static final long interval = Long.getLong(INTERVAL, TimeOffsetIndex.DEFAULT_INTERVAL);
+    private static final long gzipSpan = Long.getLong(GZIP_SPAN, GzipIndex.DEFAULT_SPAN);
+
+    public static void write(Storage storage, String region, FileMeta fileMeta) {
+        if (!isSeekable(fileMeta) || fileMeta.fileContent == null || fileMeta.fileContent.length == 0) return;
+        try {
+            InputStream content = new ByteArrayInputStream(fileMeta.fileContent);
+            if (isGzip(fileMeta)) {
+                GzipIndex gzipIndex = GzipIndex.build(fileMeta.fileContent, gzipSpan);
+                // too small to have a checkpoint - nothing to seek to
+                if (gzipIndex.size() == 0) return;
+                try (OutputStream outputStream = storage.getOutputStream(region, fileMeta.tenant, fileMeta.getStorageUrl() + GzipIndex.SUFFIX, DAYS_RETENTION, System.currentTimeMillis())) {
+                    gzipIndex.write(outputStream);
+                }
+                fileMeta.addIndex(GzipIndex.SUFFIX);
+                content = new GZIPInputStream(content);
+            }
+            TimeOffsetIndex index = TimeOffsetIndex.build(content, fileMeta.timeFormat, interval);
+            try (OutputStream outputStream = storage.getOutputStream(region, fileMeta.tenant, fileMeta.getStorageUrl() + TimeOffsetIndex.SUFFIX, DAYS_RETENTION, System.currentTimeMillis())) {
+                index.write(outputStream);
+            }
+            fileMeta.addIndex(TimeOffsetIndex.SUFFIX);
+        } catch (Exception e) {
+            log.warn("Failed to write time index:{}", fileMeta.filename, e);
+        }
+    }
+
+    /**
+     * Only files with the index listed in FileMeta.indexes are looked up - the (uncompressed) length is fileMeta.size
+     * or that of the GzipIndex, so the file itself is only opened at the range
+     *
+     * @return the part of the file that covers [from, to) with the times at either end (name, lastModified and length are
+     * the whole file) - or null when there is no index or it would not skip anything
+     */
+    public static TimeRangeInputStream open(Storage storage, String region, String tenant, FileMeta fileMeta, long from, long to) {
+        if (!isSeekable(fileMeta) || !fileMeta.hasIndex(TimeOffsetIndex.SUFFIX)) return null;
+        if (isGzip(fileMeta) ? !fileMeta.hasIndex(GzipIndex.SUFFIX) : fileMeta.size <= 0) return null;
+        TimeOffsetIndex index = read(storage, region, tenant, fileMeta.getStorageUrl());
+        if (index == null || index.size() == 0) return null;
+        GzipIndex gzipIndex = isGzip(fileMeta) ? readGzip(storage, region, tenant, fileMeta.getStorageUrl()) : null;
+        if (isGzip(fileMeta) && gzipIndex == null) return null;
+
+        try {
+            long length = gzipIndex != null ? gzipIndex.length() : fileMeta.size;
+            TimeOffsetIndex.Range range = index.seek(from, to, length, fileMeta.fromTime, fileMeta.toTime);
+            if (range.length() == length) return null;
+
+            if (gzipIndex != null) {
+                InputStream inflated = gzipIndex.open(offset -> storage.getInputStream(region, tenant, fileMeta.getStorageUrl(), offset).inputStream, range.startOffset);
+                return new TimeRangeInputStream(new StorageInputStream(fileMeta.filename, fileMeta.toTime, length, new BoundedInputStream(inflated, range.length())), range);
+            }
+            StorageInputStream ranged = storage.getInputStream(region, tenant, fileMeta.getStorageUrl(), range.startOffset);
+            return new TimeRangeInputStream(ranged.copy(new BoundedInputStream(ranged.inputStream, range.length())), range);
+        } catch (IOException e) {
+            log.warn("Failed to seek:{}", fileMeta.filename, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the byte range of an uncompressed file that covers [from, to) - or null when it is not indexed
+     */
+    public static TimeOffsetIndex.Range seek(Storage storage, String region, String tenant, FileMeta fileMeta, long from, long to, long length, long lastModified) {
+        if (fileMeta.isCompressed() || !fileMeta.hasIndex(TimeOffsetIndex.SUFFIX)) return null;
+        TimeOffsetIndex index = read(storage, region, tenant, fileMeta.getStorageUrl());
+        if (index == null || index.size() == 0) return null;
+        return index.seek(from, to, length, fileMeta.fromTime, lastModified);
+    }
+
+    private static boolean isGzip(FileMeta fileMeta) {
+        return fileMeta.filename.endsWith(".gz");
+    }
+
+    private static boolean isSeekable(FileMeta fileMeta) {
+        return !fileMeta.isCompressed() || isGzip(fileMeta);
+    }
+
+    private static GzipIndex readGzip(Storage storage, String region, String tenant, String storageUrl) {
+        try (InputStream inputStream = storage.getInputStream(region, tenant, storageUrl + GzipIndex.SUFFIX).inputStream) {
+            return GzipIndex.read(inputStream);
+        } catch (Exception e) {
+            // not indexed
+            return null;
+        }
+    }
+
+    private static TimeOffsetIndex read(Storage storage, String region, String tenant, String storageUrl) {
+        try (InputStream inputStream = storage.getInputStream(region, tenant, storageUrl + TimeOffsetIndex.SUFFIX).inputStream) {
+            return TimeOffsetIndex.read(inputStream);
+        } catch (Exception e) {
+            // not indexed
+            return null;
+        }
+    }
+
+    public static class TimeRangeInputStream {
+        public final StorageInputStream inputStream;
+        public final TimeOffsetIndex.Range range;
+
+        TimeRangeInputStream(StorageInputStream inputStream, TimeOffsetIndex.Range range) {
+            this.inputStream = inputStream;
+            this.range = range;
+        }
+    }
+}
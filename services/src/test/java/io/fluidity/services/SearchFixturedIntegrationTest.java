@@ -105,7 +105,7 @@ class SearchFixturedIntegrationTest {
 
     private String[] finalizeEvents(Search search) {
 
-        String[] results = searchResource.finaliseEvents(TENANT, search, 0);
+        String[] results = searchResource.finaliseEvents(TENANT, search, 0, null);
         assertTrue(results.length > 0);
         return results;
     }
@@ -104,6 +104,7 @@ Fluidity.Search.searchInputField = new Vue({
         '*',
         'field.getKVPair(TEXT_NAME:)',
         'field.getJsonPair(TEXT_NAME)',
+        'field.getKVPair(TEXT_NAME:), field.getJsonPair(TEXT_NAME)',
         'field.groupPair(.*[TXN]:[%d].*)',
         'field.groups(.*[TXN]:.*)'
       ]
@@ -128,7 +129,8 @@ Fluidity.Search.searchInputAnalytic = new Vue({
         'analytic.countBy(tag)',
         'analytic.stats()',
         'analytic.statsBy(tag)',
-        'analytic.statsBy(field1)'
+        'analytic.statsBy(field1)',
+        'analytic.percentiles(50,95,99)'
       ]
     }
   }